@@ -2,6 +2,7 @@ package geektime.spring.springbucks.customer;
 
 import geektime.spring.springbucks.customer.support.CustomConnectionKeepAliveStrategy;
 import geektime.spring.springbucks.customer.support.FixedDiscoveryClient;
+import geektime.spring.springbucks.customer.support.FixedInstanceHealthProbe;
 import geektime.spring.springbucks.customer.support.FixedServerList;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.http.impl.client.CloseableHttpClient;
@@ -15,6 +16,7 @@ import org.springframework.cloud.client.discovery.EnableDiscoveryClient;
 import org.springframework.cloud.client.loadbalancer.LoadBalanced;
 import org.springframework.context.annotation.Bean;
 import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.web.client.RestTemplate;
 
 import java.time.Duration;
@@ -23,6 +25,7 @@ import java.util.concurrent.TimeUnit;
 @SpringBootApplication
 @Slf4j
 @EnableDiscoveryClient
+@EnableScheduling
 public class CustomerServiceApplication {
 
     public static void main(String[] args) {
@@ -34,6 +37,11 @@ public class CustomerServiceApplication {
         return new FixedDiscoveryClient();
     }
 
+    @Bean
+    public FixedInstanceHealthProbe fixedInstanceHealthProbe() {
+        return new FixedInstanceHealthProbe();
+    }
+
     @Bean
     public FixedServerList fixedServerList() {
         return new FixedServerList();
@@ -1,21 +1,57 @@
 package geektime.spring.springbucks.customer.support;
 
+import lombok.Getter;
 import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.cloud.client.DefaultServiceInstance;
 import org.springframework.cloud.client.ServiceInstance;
 import org.springframework.cloud.client.discovery.DiscoveryClient;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
+/**
+ * 实例列表只在配置变化时解析一次，保存为不可变快照，getInstances() 直接返回
+ * FixedInstanceHealthProbe 探测失败的实例会暂时从快照中去掉，恢复后再加回来
+ * 配置刷新和健康检查在不同线程上修改实例状态，修改方法加锁，保证快照按修改的顺序发布
+ */
 @ConfigurationProperties("waiter")
-@Setter
+@Slf4j
 public class FixedDiscoveryClient implements DiscoveryClient {
     public static final String SERVICE_ID = "waiter-service";
-    // waiter.services
-    private List<String> services;
+    private final Set<String> unhealthy = new HashSet<>();
+    // 全部实例
+    private volatile List<ServiceInstance> instances = Collections.emptyList();
+    // 去掉不健康实例后的结果
+    private volatile List<ServiceInstance> available = Collections.emptyList();
+    @Getter
+    private final HealthCheck healthCheck = new HealthCheck();
+
+    /**
+     * waiter.services，绑定或刷新配置时调用
+     */
+    public synchronized void setServices(List<String> services) {
+        List<ServiceInstance> parsed = new ArrayList<>();
+        for (String service : services == null ? Collections.<String>emptyList() : services) {
+            String[] hostAndPort = service.trim().split(":");
+            if (hostAndPort.length != 2 || !hostAndPort[1].matches("\\d+")) {
+                log.warn("Ignore invalid waiter service {}, it should be HOST:PORT.", service);
+                continue;
+            }
+            parsed.add(new DefaultServiceInstance(service.trim(), SERVICE_ID,
+                    hostAndPort[0], Integer.parseInt(hostAndPort[1]), false));
+        }
+        instances = Collections.unmodifiableList(parsed);
+        unhealthy.retainAll(parsed.stream().map(ServiceInstance::getInstanceId).collect(Collectors.toSet()));
+        rebuild();
+        log.info("Waiter service instances: {}", services);
+    }
 
     @Override
     public String description() {
@@ -27,17 +63,53 @@ public class FixedDiscoveryClient implements DiscoveryClient {
         if (!SERVICE_ID.equalsIgnoreCase(serviceId)) {
             return Collections.emptyList();
         }
-        // 这里忽略了很多边界条件判断，认为就是 HOST:PORT 形式
-        return services.stream()
-                .map(s -> new DefaultServiceInstance(s,
-                        SERVICE_ID,
-                        s.split(":")[0],
-                        Integer.parseInt(s.split(":")[1]),
-                        false)).collect(Collectors.toList());
+        return available;
     }
 
     @Override
     public List<String> getServices() {
         return Collections.singletonList(SERVICE_ID);
     }
+
+    /**
+     * 包含不健康实例在内的全部实例，供健康检查使用
+     */
+    public List<ServiceInstance> getAllInstances() {
+        return instances;
+    }
+
+    public synchronized void markHealthy(String instanceId, boolean healthy) {
+        boolean changed = healthy ? unhealthy.remove(instanceId) : unhealthy.add(instanceId);
+        if (changed) {
+            log.warn("Waiter service instance {} is {}.", instanceId, healthy ? "back" : "removed");
+            rebuild();
+        }
+    }
+
+    /**
+     * 调用方需要持有锁
+     */
+    private void rebuild() {
+        List<ServiceInstance> healthy = instances.stream()
+                .filter(i -> !unhealthy.contains(i.getInstanceId()))
+                .collect(Collectors.toList());
+        // 全部不可用时不做摘除，避免把所有流量都拒绝掉
+        available = healthy.isEmpty() ? instances : Collections.unmodifiableList(healthy);
+    }
+
+    @Getter
+    @Setter
+    public static class HealthCheck {
+        private boolean enabled = true;
+        private String path = "/actuator/health";
+        /**
+         * 探测间隔
+         */
+        private Duration interval = Duration.ofSeconds(5);
+        private Duration timeout = Duration.ofMillis(500);
+        /**
+         * 连续失败多少次后摘除
+         */
+        private int failureThreshold = 2;
+    }
 }
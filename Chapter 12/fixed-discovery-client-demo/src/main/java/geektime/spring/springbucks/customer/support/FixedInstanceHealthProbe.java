@@ -0,0 +1,63 @@
+package geektime.spring.springbucks.customer.support;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * 定时访问每个实例的健康检查地址，连续失败达到阈值后暂时摘除，成功一次即恢复
+ */
+@Slf4j
+public class FixedInstanceHealthProbe {
+    private final Map<String, Integer> failures = new ConcurrentHashMap<>();
+    @Autowired
+    private FixedDiscoveryClient discoveryClient;
+
+    // 间隔取自绑定后的 waiter.health-check.interval，支持 5s 这类 Duration 写法
+    @Scheduled(fixedDelayString = "#{@fixedDiscoveryClient.healthCheck.interval.toMillis()}")
+    public void probe() {
+        FixedDiscoveryClient.HealthCheck config = discoveryClient.getHealthCheck();
+        if (!config.isEnabled()) {
+            return;
+        }
+        for (ServiceInstance instance : discoveryClient.getAllInstances()) {
+            String id = instance.getInstanceId();
+            if (isUp(instance, config)) {
+                failures.remove(id);
+                discoveryClient.markHealthy(id, true);
+            } else if (failures.merge(id, 1, Integer::sum) >= config.getFailureThreshold()) {
+                discoveryClient.markHealthy(id, false);
+            }
+        }
+        failures.keySet().retainAll(discoveryClient.getAllInstances().stream()
+                .map(ServiceInstance::getInstanceId)
+                .collect(Collectors.toSet()));
+    }
+
+    private boolean isUp(ServiceInstance instance, FixedDiscoveryClient.HealthCheck config) {
+        HttpURLConnection connection = null;
+        try {
+            URL url = new URL(instance.getUri() + config.getPath());
+            connection = (HttpURLConnection) url.openConnection();
+            connection.setConnectTimeout((int) config.getTimeout().toMillis());
+            connection.setReadTimeout((int) config.getTimeout().toMillis());
+            int status = connection.getResponseCode();
+            return status >= 200 && status < 300;
+        } catch (IOException e) {
+            log.debug("Health check of {} failed: {}", instance.getInstanceId(), e.getMessage());
+            return false;
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+}
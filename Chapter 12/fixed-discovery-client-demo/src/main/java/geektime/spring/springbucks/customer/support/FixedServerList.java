@@ -3,13 +3,17 @@ package geektime.spring.springbucks.customer.support;
 import com.netflix.loadbalancer.Server;
 import com.netflix.loadbalancer.ServerList;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cloud.client.ServiceInstance;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
 
 public class FixedServerList implements ServerList<Server> {
     @Autowired
     private FixedDiscoveryClient discoveryClient;
+    // 实例快照没有变化时复用上次转换的结果
+    private volatile Snapshot snapshot = new Snapshot(null, Collections.emptyList());
 
     @Override
     public List<Server> getInitialListOfServers() {
@@ -22,8 +26,24 @@ public class FixedServerList implements ServerList<Server> {
     }
 
     private List<Server> getServers() {
-        return discoveryClient.getInstances(FixedDiscoveryClient.SERVICE_ID).stream()
-                .map(i -> new Server(i.getHost(), i.getPort()))
-                .collect(Collectors.toList());
+        List<ServiceInstance> instances = discoveryClient.getInstances(FixedDiscoveryClient.SERVICE_ID);
+        Snapshot current = snapshot;
+        if (current.instances != instances) {
+            current = new Snapshot(instances, Collections.unmodifiableList(instances.stream()
+                    .map(i -> new Server(i.getHost(), i.getPort()))
+                    .collect(Collectors.toList())));
+            snapshot = current;
+        }
+        return current.servers;
+    }
+
+    private static class Snapshot {
+        private final List<ServiceInstance> instances;
+        private final List<Server> servers;
+
+        Snapshot(List<ServiceInstance> instances, List<Server> servers) {
+            this.instances = instances;
+            this.servers = servers;
+        }
     }
 }
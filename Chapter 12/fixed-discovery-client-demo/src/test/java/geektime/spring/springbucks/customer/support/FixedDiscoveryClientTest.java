@@ -0,0 +1,57 @@
+package geektime.spring.springbucks.customer.support;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.cloud.client.ServiceInstance;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+
+public class FixedDiscoveryClientTest {
+    private FixedDiscoveryClient client;
+
+    @Before
+    public void setUp() {
+        client = new FixedDiscoveryClient();
+        client.setServices(Arrays.asList("waiter-1:8080", "waiter-2:8080", "waiter-3:8080"));
+    }
+
+    @Test
+    public void unhealthyInstanceIsPruned() {
+        client.markHealthy("waiter-2:8080", false);
+        assertEquals(Arrays.asList("waiter-1:8080", "waiter-3:8080"), available());
+        assertEquals(3, client.getAllInstances().size());
+    }
+
+    @Test
+    public void recoveredInstanceIsRestored() {
+        client.markHealthy("waiter-2:8080", false);
+        client.markHealthy("waiter-2:8080", true);
+        assertEquals(Arrays.asList("waiter-1:8080", "waiter-2:8080", "waiter-3:8080"), available());
+    }
+
+    @Test
+    public void allUnhealthyFallsBackToFullList() {
+        client.markHealthy("waiter-1:8080", false);
+        client.markHealthy("waiter-2:8080", false);
+        client.markHealthy("waiter-3:8080", false);
+        assertEquals(Arrays.asList("waiter-1:8080", "waiter-2:8080", "waiter-3:8080"), available());
+    }
+
+    @Test
+    public void removedInstanceIsForgotten() {
+        client.markHealthy("waiter-3:8080", false);
+        client.setServices(Arrays.asList("waiter-1:8080", "waiter-2:8080"));
+        client.setServices(Arrays.asList("waiter-1:8080", "waiter-2:8080", "waiter-3:8080"));
+        assertEquals(Arrays.asList("waiter-1:8080", "waiter-2:8080", "waiter-3:8080"), available());
+    }
+
+    private List<String> available() {
+        return client.getInstances(FixedDiscoveryClient.SERVICE_ID).stream()
+                .map(ServiceInstance::getInstanceId)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,73 @@
+package geektime.spring.springbucks.customer.support;
+
+import com.netflix.client.config.IClientConfig;
+import com.netflix.loadbalancer.AbstractLoadBalancer;
+import com.netflix.loadbalancer.AbstractLoadBalancerRule;
+import com.netflix.loadbalancer.ILoadBalancer;
+import com.netflix.loadbalancer.LoadBalancerStats;
+import com.netflix.loadbalancer.Server;
+import com.netflix.loadbalancer.ServerStats;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Power of Two Choices：随机挑两个可用实例，选负载较低的一个
+ * 负载 = (在途请求数 + 1) * 最近的平均响应时间，慢实例的在途请求会堆积，自然分到更少的流量
+ * 数据来自 Ribbon 的 ServerStats，RestTemplate 和 Feign 的调用都会记录；
+ * 响应时间取最近一个统计窗口（默认一分钟）的均值，而不是从启动开始累计的均值，
+ * 恢复的实例在下一个窗口就不再受罚，刚变慢的实例也能很快反映出来
+ * 通过 <服务名>.ribbon.NFLoadBalancerRuleClassName 启用
+ * 各章节的模块相互独立，ribbon-customer-service、feign-customer-service、
+ * fixed-discovery-client-demo 中各有一份相同的拷贝，修改时需要同步，测试只放在 ribbon-customer-service 中
+ */
+public class PowerOfTwoChoicesRule extends AbstractLoadBalancerRule {
+    // 最近的窗口里没有响应时间数据时，按 1ms 计算，让没有流量的实例有机会被探测到
+    private static final double MIN_RESPONSE_TIME = 1.0;
+
+    @Override
+    public void initWithNiwsConfig(IClientConfig clientConfig) {
+    }
+
+    @Override
+    public Server choose(Object key) {
+        ILoadBalancer lb = getLoadBalancer();
+        if (lb == null) {
+            return null;
+        }
+        List<Server> servers = lb.getReachableServers();
+        if (servers.isEmpty()) {
+            return null;
+        }
+        if (servers.size() == 1) {
+            return servers.get(0);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(servers.size());
+        int second = random.nextInt(servers.size() - 1);
+        if (second >= first) {
+            second++;
+        }
+        Server a = servers.get(first);
+        Server b = servers.get(second);
+        if (!(lb instanceof AbstractLoadBalancer)) {
+            return a;
+        }
+        LoadBalancerStats stats = ((AbstractLoadBalancer) lb).getLoadBalancerStats();
+        long now = System.currentTimeMillis();
+        return cost(stats, a, now) <= cost(stats, b, now) ? a : b;
+    }
+
+    private double cost(LoadBalancerStats stats, Server server, long now) {
+        if (stats == null) {
+            return 0;
+        }
+        ServerStats serverStats = stats.getSingleServerStat(server);
+        if (serverStats.isCircuitBreakerTripped(now)) {
+            return Double.MAX_VALUE;
+        }
+        double recent = serverStats.getResponseTimeAvgRecent();
+        double responseTime = Double.isNaN(recent) ? MIN_RESPONSE_TIME : Math.max(recent, MIN_RESPONSE_TIME);
+        return (serverStats.getActiveRequestsCount(now) + 1) * responseTime;
+    }
+}
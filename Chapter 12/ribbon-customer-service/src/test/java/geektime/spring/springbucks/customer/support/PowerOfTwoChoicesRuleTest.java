@@ -0,0 +1,91 @@
+package geektime.spring.springbucks.customer.support;
+
+import com.netflix.loadbalancer.AbstractLoadBalancer;
+import com.netflix.loadbalancer.LoadBalancerStats;
+import com.netflix.loadbalancer.Server;
+import com.netflix.loadbalancer.ServerStats;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 只有两个实例时每次都会比较这两个，结果与随机数无关
+ * ServerStats 用 Mock 代替，直接给出在途请求数和响应时间
+ */
+public class PowerOfTwoChoicesRuleTest {
+    private final Server a = new Server("waiter-1", 8080);
+    private final Server b = new Server("waiter-2", 8080);
+    private ServerStats statsA;
+    private ServerStats statsB;
+    private PowerOfTwoChoicesRule rule;
+
+    @Before
+    public void setUp() {
+        statsA = mock(ServerStats.class);
+        statsB = mock(ServerStats.class);
+        LoadBalancerStats stats = mock(LoadBalancerStats.class);
+        when(stats.getSingleServerStat(a)).thenReturn(statsA);
+        when(stats.getSingleServerStat(b)).thenReturn(statsB);
+        AbstractLoadBalancer lb = mock(AbstractLoadBalancer.class);
+        when(lb.getReachableServers()).thenReturn(Arrays.asList(a, b));
+        when(lb.getLoadBalancerStats()).thenReturn(stats);
+        rule = new PowerOfTwoChoicesRule();
+        rule.setLoadBalancer(lb);
+    }
+
+    @Test
+    public void prefersFasterInstance() {
+        stub(statsA, 0, 50);
+        stub(statsB, 0, 5);
+        assertChosen(b);
+    }
+
+    @Test
+    public void usesRecentResponseTimeInsteadOfLifetimeAverage() {
+        // a 以前很慢，最近已经恢复；b 的累计均值很低，但最近变慢了
+        stub(statsA, 0, 2);
+        when(statsA.getResponseTimeAvg()).thenReturn(100.0);
+        stub(statsB, 0, 20);
+        when(statsB.getResponseTimeAvg()).thenReturn(2.0);
+        assertChosen(a);
+    }
+
+    @Test
+    public void activeRequestsAddToCost() {
+        stub(statsA, 5, 10);
+        stub(statsB, 0, 10);
+        assertChosen(b);
+    }
+
+    @Test
+    public void instanceWithoutRecentSamplesIsProbed() {
+        stub(statsA, 0, 30);
+        stub(statsB, 0, Double.NaN);
+        assertChosen(b);
+    }
+
+    @Test
+    public void avoidsTrippedCircuitBreaker() {
+        stub(statsA, 0, 1);
+        when(statsA.isCircuitBreakerTripped(anyLong())).thenReturn(true);
+        stub(statsB, 10, 100);
+        assertChosen(b);
+    }
+
+    private void stub(ServerStats stats, int active, double recent) {
+        when(stats.getActiveRequestsCount(anyLong())).thenReturn(active);
+        when(stats.getResponseTimeAvgRecent()).thenReturn(recent);
+    }
+
+    private void assertChosen(Server expected) {
+        for (int i = 0; i < 20; i++) {
+            assertEquals(expected, rule.choose(null));
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package geektime.spring.springbucks.barista;
+
+import geektime.spring.springbucks.barista.integration.Waiter;
+import geektime.spring.springbucks.barista.model.CoffeeOrder;
+import geektime.spring.springbucks.barista.model.OrderState;
+import geektime.spring.springbucks.barista.repository.CoffeeOrderRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.LongSerializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.Assume;
+import org.junit.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.InterceptableChannel;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 验证按订单 ID 分区后，barista 的吞吐随 newOrders 的消费线程数线性增长
+ * 每一轮用 application.properties 启动真实的 BaristaServiceApplication 和 Kafka Binder，
+ * 只替换 Topic、消费组、concurrency，并用 H2 代替 MySQL；
+ * 订单经 OrderListener 处理后从 finishedOrders 读出，同时检查分区与 partition-key-expression 一致
+ * 需要本地单节点 Kafka（kafka-waiter-service/docker-compose.yml），默认跳过：
+ * mvn test -Dtest=PartitionScalingLoadTest -Dkafka.load-test=true
+ */
+@Slf4j
+public class PartitionScalingLoadTest {
+    private static final String BROKERS = System.getProperty("kafka.brokers", "localhost:9092");
+    private static final int PARTITIONS = 8;
+    private static final int MESSAGES = Integer.getInteger("kafka.load-test.messages", 4000);
+    // H2 的操作远快于 MySQL，在消费线程上补上每条消息的数据库耗时
+    private static final long WORK_MILLIS = 2;
+
+    @Test
+    public void throughputScalesWithConcurrency() throws Exception {
+        Assume.assumeTrue(Boolean.getBoolean("kafka.load-test"));
+
+        double base = 0;
+        for (int concurrency = 1; concurrency <= PARTITIONS; concurrency *= 2) {
+            double throughput = run(concurrency);
+            if (concurrency == 1) {
+                base = throughput;
+            }
+            double speedup = throughput / base;
+            log.info("concurrency={} throughput={} msg/s speedup={}", concurrency,
+                    String.format("%.0f", throughput), String.format("%.2f", speedup));
+            // 允许 30% 的损耗
+            assertTrue("Speedup with " + concurrency + " consumers is only " + speedup,
+                    speedup >= concurrency * 0.7);
+        }
+    }
+
+    private double run(int concurrency) throws Exception {
+        String suffix = UUID.randomUUID().toString();
+        String newOrders = "newOrders-load-" + suffix;
+        String finishedOrders = "finishedOrders-load-" + suffix;
+        try (ConfigurableApplicationContext barista = new SpringApplicationBuilder(BaristaServiceApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.autoconfigure.exclude="
+                                + "org.springframework.cloud.stream.test.binder.TestSupportBinderAutoConfiguration",
+                        "--spring.cloud.stream.kafka.binder.brokers=" + BROKERS,
+                        "--spring.cloud.stream.bindings.newOrders.destination=" + newOrders,
+                        "--spring.cloud.stream.bindings.newOrders.group=barista-load-" + suffix,
+                        "--spring.cloud.stream.bindings.newOrders.consumer.concurrency=" + concurrency,
+                        "--spring.cloud.stream.bindings.finishedOrders.destination=" + finishedOrders,
+                        "--spring.datasource.url=jdbc:h2:mem:" + suffix + ";MODE=MySQL",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.jpa.hibernate.ddl-auto=create-drop",
+                        "--spring.jpa.properties.hibernate.show_sql=false",
+                        "--logging.level.org.apache.kafka=WARN");
+             KafkaConsumer<String, String> observer = observe(finishedOrders)) {
+            seedOrders(barista);
+            MessageChannel input = barista.getBean(Waiter.NEW_ORDERS, MessageChannel.class);
+            ((InterceptableChannel) input).addInterceptor(new ChannelInterceptor() {
+                @Override
+                public Message<?> preSend(Message<?> message, MessageChannel channel) {
+                    try {
+                        Thread.sleep(WORK_MILLIS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return message;
+                }
+            });
+            produce(newOrders);
+            return collect(observer, concurrency);
+        }
+    }
+
+    private void seedOrders(ConfigurableApplicationContext barista) {
+        List<CoffeeOrder> orders = new ArrayList<>(MESSAGES);
+        for (int i = 0; i < MESSAGES; i++) {
+            CoffeeOrder order = new CoffeeOrder();
+            order.setCustomer("load-test");
+            order.setWaiter("load-test");
+            order.setState(OrderState.PAID);
+            orders.add(order);
+        }
+        barista.getBean(CoffeeOrderRepository.class).saveAll(orders);
+    }
+
+    /**
+     * 与 waiter-service 的 partition-key-expression=payload 相同，按订单 ID 选择分区
+     */
+    private void produce(String topic) {
+        Map<String, Object> props = new HashMap<>();
+        props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, BROKERS);
+        props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, LongSerializer.class);
+        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        try (KafkaProducer<Long, String> producer = new KafkaProducer<>(props)) {
+            for (long id = 1; id <= MESSAGES; id++) {
+                producer.send(new ProducerRecord<>(topic, partitionOf(id), id, String.valueOf(id)));
+            }
+            producer.flush();
+        }
+    }
+
+    private KafkaConsumer<String, String> observe(String topic) {
+        Map<String, Object> props = new HashMap<>();
+        props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, BROKERS);
+        props.put(ConsumerConfig.GROUP_ID_CONFIG, "observer-" + topic);
+        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        KafkaConsumer<String, String> consumer = new KafkaConsumer<>(props);
+        // Binding 启动时已经按 min-partition-count 创建好 Topic
+        List<PartitionInfo> partitions = consumer.partitionsFor(topic);
+        consumer.assign(partitions.stream()
+                .map(p -> new TopicPartition(topic, p.partition()))
+                .collect(Collectors.toList()));
+        return consumer;
+    }
+
+    /**
+     * 从第一条完成通知开始计时，排除消费组加入和分区分配的时间
+     */
+    private double collect(KafkaConsumer<String, String> observer, int concurrency) {
+        Set<Long> finished = new HashSet<>();
+        long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(5);
+        long start = 0;
+        long end = 0;
+        while (finished.size() < MESSAGES && System.nanoTime() < deadline) {
+            for (ConsumerRecord<String, String> record : observer.poll(Duration.ofMillis(100))) {
+                end = System.nanoTime();
+                if (start == 0) {
+                    start = end;
+                }
+                long id = Long.parseLong(record.value());
+                assertEquals("Order " + id + " is on the wrong partition", partitionOf(id), record.partition());
+                finished.add(id);
+            }
+        }
+        assertEquals("Not all orders finished with " + concurrency + " consumers", MESSAGES, finished.size());
+        return MESSAGES / ((end - start) / 1_000_000_000.0);
+    }
+
+    /**
+     * Spring Cloud Stream 默认的 PartitionSelectorStrategy：key 的 hashCode 取绝对值后对分区数取模
+     */
+    private static int partitionOf(long id) {
+        int hash = Long.valueOf(id).hashCode();
+        return (hash == Integer.MIN_VALUE ? 0 : Math.abs(hash)) % PARTITIONS;
+    }
+}
@@ -11,6 +11,7 @@ import org.springframework.cloud.client.discovery.EnableDiscoveryClient;
 import org.springframework.cloud.stream.annotation.EnableBinding;
 import org.springframework.context.annotation.Bean;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
@@ -21,6 +22,7 @@ import java.util.TimeZone;
 @EnableCaching
 @EnableDiscoveryClient
 @EnableBinding(Barista.class)
+@EnableScheduling
 public class WaiterServiceApplication implements WebMvcConfigurer {
 
 	public static void main(String[] args) {
@@ -4,8 +4,10 @@ import geektime.spring.springbucks.waiter.controller.request.NewOrderRequest;
 import geektime.spring.springbucks.waiter.controller.request.OrderStateRequest;
 import geektime.spring.springbucks.waiter.model.Coffee;
 import geektime.spring.springbucks.waiter.model.CoffeeOrder;
+import geektime.spring.springbucks.waiter.model.OrderState;
 import geektime.spring.springbucks.waiter.service.CoffeeOrderService;
 import geektime.spring.springbucks.waiter.service.CoffeeService;
+import geektime.spring.springbucks.waiter.support.OrderStateNotifier;
 import io.github.resilience4j.ratelimiter.RateLimiter;
 import io.github.resilience4j.ratelimiter.RateLimiterRegistry;
 import io.github.resilience4j.ratelimiter.RequestNotPermitted;
@@ -19,17 +21,26 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/order")
 @Slf4j
 public class CoffeeOrderController {
+    private static final int MAX_STATE_IDS = 200;
     @Autowired
     private CoffeeOrderService orderService;
     @Autowired
     private CoffeeService coffeeService;
+    @Autowired
+    private OrderStateNotifier stateNotifier;
     private RateLimiter rateLimiter;
 
     public CoffeeOrderController(RateLimiterRegistry rateLimiterRegistry) {
@@ -48,6 +59,20 @@ public class CoffeeOrderController {
         return order;
     }
 
+    @GetMapping("/states")
+    public Map<Long, OrderState> getStates(@RequestParam("id") List<Long> ids) {
+        if (ids.size() > MAX_STATE_IDS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "At most " + MAX_STATE_IDS + " orders in one request");
+        }
+        return orderService.getStates(ids);
+    }
+
+    @GetMapping(path = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter subscribeStates() {
+        return stateNotifier.subscribe();
+    }
+
     @PostMapping(path = "/", consumes = MediaType.APPLICATION_JSON_VALUE,
             produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
     @ResponseStatus(HttpStatus.CREATED)
@@ -6,6 +6,7 @@ import geektime.spring.springbucks.waiter.model.CoffeeOrder;
 import geektime.spring.springbucks.waiter.model.OrderState;
 import geektime.spring.springbucks.waiter.repository.CoffeeOrderRepository;
 import geektime.spring.springbucks.waiter.support.OrderProperties;
+import geektime.spring.springbucks.waiter.support.OrderStateNotifier;
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.binder.MeterBinder;
@@ -15,11 +16,15 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.math.RoundingMode;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -33,6 +38,8 @@ public class CoffeeOrderService implements MeterBinder {
     @Autowired
     private OrderProperties orderProperties;
     @Autowired
+    private OrderStateNotifier stateNotifier;
+    @Autowired
     private Barista barista;
 
     private String waiterId = UUID.randomUUID().toString();
@@ -43,6 +50,15 @@ public class CoffeeOrderService implements MeterBinder {
         return orderRepository.getOne(id);
     }
 
+    /**
+     * 一次查询返回多个订单的状态，不存在的订单不在结果中
+     */
+    @Transactional(readOnly = true)
+    public Map<Long, OrderState> getStates(Collection<Long> ids) {
+        return orderRepository.findStatesByIdIn(ids).stream()
+                .collect(Collectors.toMap(r -> (Long) r[0], r -> (OrderState) r[1]));
+    }
+
     public CoffeeOrder createOrder(String customer, Coffee...coffee) {
         CoffeeOrder order = CoffeeOrder.builder()
                 .customer(customer)
@@ -70,6 +86,14 @@ public class CoffeeOrderService implements MeterBinder {
         order.setState(state);
         orderRepository.save(order);
         log.info("Updated Order: {}", order);
+        // 事务提交后再推送，避免订阅方看到随后被回滚的状态
+        Long id = order.getId();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                stateNotifier.publish(id, state);
+            }
+        });
         if (state == OrderState.PAID) {
             // 有返回值，如果要关注发送结果，则判断返回值
             // 一般消息体不会这么简单
@@ -0,0 +1,159 @@
+package geektime.spring.springbucks.waiter.integration;
+
+import geektime.spring.springbucks.waiter.support.ConfirmProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageBuilder;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.cloud.stream.config.BindingServiceProperties;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 异步等待 Publisher Confirm 的发送器，发送方不必逐条同步等待
+ * 待确认的消息按 Correlation ID 记录在 ConcurrentHashMap 中，
+ * Confirm 回调只把结果放进无锁队列，由定时任务批量处理：
+ * ack 的移除并记录耗时（从发送到回调到达），nack 或超时的重新发送
+ * 每条消息最多发送 max-attempts 次，仍未确认的记录错误日志后放弃；
+ * 等待确认的消息超过 max-inflight 时拒绝发送新消息，避免 Broker 不可用时内存无限增长
+ * 重发可能导致重复消息，消费者需要自行幂等
+ */
+@Component
+@Slf4j
+public class ConfirmingPublisher {
+    private final Map<String, Pending> inflight = new ConcurrentHashMap<>();
+    private final Queue<Confirm> confirms = new ConcurrentLinkedQueue<>();
+    private final RabbitTemplate rabbitTemplate;
+    private final BindingServiceProperties bindingServiceProperties;
+    private final ConfirmProperties properties;
+    private final Timer confirmTimer;
+    private final Counter nackCounter;
+    private final Counter timeoutCounter;
+    private final Counter failedCounter;
+    private final Counter rejectedCounter;
+
+    public ConfirmingPublisher(RabbitTemplate rabbitTemplate,
+                               BindingServiceProperties bindingServiceProperties,
+                               ConfirmProperties properties,
+                               MeterRegistry meterRegistry) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.bindingServiceProperties = bindingServiceProperties;
+        this.properties = properties;
+        this.rabbitTemplate.setConfirmCallback((correlation, ack, cause) ->
+                confirms.offer(new Confirm(correlation == null ? null : correlation.getId(), ack, cause,
+                        System.nanoTime())));
+        meterRegistry.gauge("order.publish.inflight", inflight, Map::size);
+        this.confirmTimer = meterRegistry.timer("order.publish.confirm");
+        this.nackCounter = meterRegistry.counter("order.publish.resend", "reason", "nack");
+        this.timeoutCounter = meterRegistry.counter("order.publish.resend", "reason", "timeout");
+        this.failedCounter = meterRegistry.counter("order.publish.failed");
+        this.rejectedCounter = meterRegistry.counter("order.publish.rejected");
+    }
+
+    /**
+     * 发送到 Binding 对应的 Exchange，立即返回
+     * 等待确认的消息过多时抛出 IllegalStateException，由调用方决定是否重试
+     */
+    public void send(String binding, Object payload) {
+        if (inflight.size() >= properties.getMaxInflight()) {
+            rejectedCounter.increment();
+            throw new IllegalStateException("Too many unconfirmed messages: " + inflight.size());
+        }
+        send(new Pending(bindingServiceProperties.getBindingDestination(binding),
+                String.valueOf(payload), 0));
+    }
+
+    @Scheduled(fixedDelayString = "#{@confirmProperties.drainInterval.toMillis()}")
+    public void drain() {
+        int acked = 0;
+        Confirm confirm;
+        while ((confirm = confirms.poll()) != null) {
+            Pending pending = confirm.id == null ? null : inflight.remove(confirm.id);
+            if (pending == null) {
+                // 已经因为超时重发过了
+                continue;
+            }
+            if (confirm.ack) {
+                confirmTimer.record(confirm.receivedAt - pending.sentAt, TimeUnit.NANOSECONDS);
+                acked++;
+            } else {
+                log.warn("Message {} to {} is nacked after {} attempts: {}.",
+                        pending.payload, pending.exchange, pending.attempts, confirm.cause);
+                resend(pending, nackCounter);
+            }
+        }
+
+        long deadline = System.nanoTime() - properties.getTimeout().toNanos();
+        inflight.forEach((id, pending) -> {
+            if (pending.sentAt < deadline && inflight.remove(id, pending)) {
+                log.warn("Message {} to {} is not confirmed in time after {} attempts.",
+                        pending.payload, pending.exchange, pending.attempts);
+                resend(pending, timeoutCounter);
+            }
+        });
+        if (acked > 0) {
+            log.debug("{} messages confirmed, {} in flight.", acked, inflight.size());
+        }
+    }
+
+    private void resend(Pending pending, Counter reason) {
+        if (pending.attempts >= properties.getMaxAttempts()) {
+            // 没有死信队列可用（Broker 很可能正不可用），完整记录消息内容，由人工补发
+            log.error("Give up message {} to {} after {} attempts.",
+                    pending.payload, pending.exchange, pending.attempts);
+            failedCounter.increment();
+            return;
+        }
+        reason.increment();
+        send(pending);
+    }
+
+    private void send(Pending previous) {
+        Pending pending = new Pending(previous.exchange, previous.payload, previous.attempts + 1);
+        String id = UUID.randomUUID().toString();
+        inflight.put(id, pending);
+        try {
+            rabbitTemplate.send(pending.exchange, pending.exchange, toMessage(pending.payload),
+                    new CorrelationData(id));
+        } catch (Exception e) {
+            // 留在 inflight 中，超时后重发
+            log.warn("Failed to send message {} to {}: {}", pending.payload, pending.exchange, e.getMessage());
+        }
+    }
+
+    private Message toMessage(String payload) {
+        return MessageBuilder.withBody(payload.getBytes(StandardCharsets.UTF_8))
+                .setContentType(MessageProperties.CONTENT_TYPE_JSON)
+                .build();
+    }
+
+    @AllArgsConstructor
+    private static class Pending {
+        private final String exchange;
+        private final String payload;
+        private final int attempts;
+        private final long sentAt = System.nanoTime();
+    }
+
+    @AllArgsConstructor
+    private static class Confirm {
+        private final String id;
+        private final boolean ack;
+        private final String cause;
+        private final long receivedAt;
+    }
+}
@@ -1,14 +1,21 @@
 package geektime.spring.springbucks.waiter.integration;
 
+import geektime.spring.springbucks.waiter.model.OrderState;
+import geektime.spring.springbucks.waiter.support.OrderStateNotifier;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cloud.stream.annotation.StreamListener;
 import org.springframework.stereotype.Component;
 
 @Component
 @Slf4j
 public class OrderListener {
+    @Autowired
+    private OrderStateNotifier stateNotifier;
+
     @StreamListener(Barista.FINISHED_ORDERS)
     public void listenFinishedOrders(Long id) {
         log.info("We've finished an order [{}].", id);
+        stateNotifier.publish(id, OrderState.BREWED);
     }
 }
@@ -2,6 +2,16 @@ package geektime.spring.springbucks.waiter.repository;
 
 import geektime.spring.springbucks.waiter.model.CoffeeOrder;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
 
 public interface CoffeeOrderRepository extends JpaRepository<CoffeeOrder, Long> {
+    /**
+     * 只查询 ID 和状态，返回 [id, state]
+     */
+    @Query("select o.id, o.state from CoffeeOrder o where o.id in :ids")
+    List<Object[]> findStatesByIdIn(@Param("ids") Collection<Long> ids);
 }
@@ -0,0 +1,29 @@
+package geektime.spring.springbucks.waiter.support;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@ConfigurationProperties("order.confirm")
+@Data
+@Component
+public class ConfirmProperties {
+    /**
+     * 超过这个时间还没有收到 Confirm 的消息会被重发
+     */
+    private Duration timeout = Duration.ofSeconds(5);
+    /**
+     * 批量处理 Confirm 结果、检查超时的间隔
+     */
+    private Duration drainInterval = Duration.ofMillis(100);
+    /**
+     * 每条消息最多发送的次数，超过后放弃并记录错误日志
+     */
+    private int maxAttempts = 5;
+    /**
+     * 最多允许多少条消息等待 Confirm，超过时拒绝发送新消息
+     */
+    private int maxInflight = 10000;
+}
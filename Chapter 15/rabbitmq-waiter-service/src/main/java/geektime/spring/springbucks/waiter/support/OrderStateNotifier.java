@@ -0,0 +1,58 @@
+package geektime.spring.springbucks.waiter.support;
+
+import geektime.spring.springbucks.waiter.model.OrderState;
+import geektime.spring.springbucks.waiter.model.OrderStateChange;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 通过 SSE 向订阅方推送订单状态变化
+ * finishedOrders 按消费组投递，多实例时每个实例只能推送自己收到的变化，
+ * 订阅方需要定期用批量状态接口校对
+ */
+@Component
+@Slf4j
+public class OrderStateNotifier {
+    private static final long TIMEOUT = 5 * 60 * 1000L;
+    private final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+
+    public SseEmitter subscribe() {
+        SseEmitter emitter = new SseEmitter(TIMEOUT);
+        emitters.add(emitter);
+        emitter.onCompletion(() -> emitters.remove(emitter));
+        emitter.onTimeout(() -> emitters.remove(emitter));
+        log.info("New order state subscriber, {} in total.", emitters.size());
+        return emitter;
+    }
+
+    public void publish(Long id, OrderState state) {
+        OrderStateChange change = new OrderStateChange(id, state);
+        emitters.forEach(e -> send(e, SseEmitter.event()
+                .name("state")
+                .data(change, MediaType.APPLICATION_JSON)));
+    }
+
+    /**
+     * 定期发送注释行，及时发现断开的连接，也让订阅方知道连接仍然可用
+     */
+    @Scheduled(fixedRate = 15000)
+    public void heartbeat() {
+        emitters.forEach(e -> send(e, SseEmitter.event().comment("heartbeat")));
+    }
+
+    private void send(SseEmitter emitter, SseEmitter.SseEventBuilder event) {
+        try {
+            emitter.send(event);
+        } catch (IOException | IllegalStateException e) {
+            emitters.remove(emitter);
+            log.debug("Order state subscriber is gone: {}", e.getMessage());
+        }
+    }
+}
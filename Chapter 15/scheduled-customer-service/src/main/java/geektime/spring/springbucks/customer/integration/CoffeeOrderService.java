@@ -2,6 +2,7 @@ package geektime.spring.springbucks.customer.integration;
 
 import geektime.spring.springbucks.customer.model.CoffeeOrder;
 import geektime.spring.springbucks.customer.model.NewOrderRequest;
+import geektime.spring.springbucks.customer.model.OrderState;
 import geektime.spring.springbucks.customer.model.OrderStateRequest;
 import org.springframework.cloud.openfeign.FeignClient;
 import org.springframework.http.MediaType;
@@ -10,12 +11,19 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
+
+import java.util.List;
+import java.util.Map;
 
 @FeignClient(name = "waiter-service", contextId = "coffeeOrder")
 public interface CoffeeOrderService {
     @GetMapping("/order/{id}")
     CoffeeOrder getOrder(@PathVariable("id") Long id);
 
+    @GetMapping("/order/states")
+    Map<Long, OrderState> getStates(@RequestParam("id") List<Long> ids);
+
     @PostMapping(path = "/order/", consumes = MediaType.APPLICATION_JSON_VALUE,
             produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
     CoffeeOrder create(@RequestBody NewOrderRequest newOrder);
@@ -0,0 +1,139 @@
+package geektime.spring.springbucks.customer.integration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import geektime.spring.springbucks.customer.model.OrderStateChange;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.LoadBalancerClient;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 订阅 waiter-service 的 /order/events，把收到的状态变化作为应用事件发布
+ * 断开后自动重连，getConnectedAt() 为 0 表示当前没有连接
+ */
+@Component
+@Slf4j
+public class OrderStateSubscriber implements SmartLifecycle {
+    private static final String WAITER_SERVICE = "waiter-service";
+    // 服务端每 15 秒发送一次心跳
+    private static final int READ_TIMEOUT = 30000;
+    private static final long RETRY_INTERVAL = 3000;
+
+    @Autowired
+    private LoadBalancerClient loadBalancerClient;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+    @Value("${order.state-subscription.enabled:true}")
+    private boolean enabled;
+
+    private volatile boolean running = false;
+    private volatile long connectedAt = 0;
+    private volatile HttpURLConnection connection;
+    private Thread thread;
+
+    public long getConnectedAt() {
+        return connectedAt;
+    }
+
+    @Override
+    public synchronized void start() {
+        if (!enabled || running) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this::loop, "order-state-subscriber");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public synchronized void stop() {
+        running = false;
+        HttpURLConnection current = connection;
+        if (current != null) {
+            current.disconnect();
+        }
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void loop() {
+        while (running) {
+            try {
+                subscribe();
+            } catch (IOException e) {
+                if (running) {
+                    log.warn("Order state subscription is broken: {}", e.getMessage());
+                }
+            } finally {
+                connectedAt = 0;
+                connection = null;
+            }
+            try {
+                Thread.sleep(RETRY_INTERVAL);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void subscribe() throws IOException {
+        ServiceInstance instance = loadBalancerClient.choose(WAITER_SERVICE);
+        if (instance == null) {
+            log.debug("No {} instance to subscribe.", WAITER_SERVICE);
+            return;
+        }
+        HttpURLConnection current = (HttpURLConnection) new URL(instance.getUri() + "/order/events").openConnection();
+        connection = current;
+        current.setRequestProperty("Accept", "text/event-stream");
+        current.setConnectTimeout(1000);
+        current.setReadTimeout(READ_TIMEOUT);
+        if (current.getResponseCode() != HttpURLConnection.HTTP_OK) {
+            throw new IOException("Unexpected status " + current.getResponseCode());
+        }
+        connectedAt = System.currentTimeMillis();
+        log.info("Subscribed to order states of {}.", instance.getUri());
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(current.getInputStream(), StandardCharsets.UTF_8))) {
+            StringBuilder data = new StringBuilder();
+            String line;
+            while (running && (line = reader.readLine()) != null) {
+                if (line.startsWith("data:")) {
+                    data.append(line.substring(5).trim());
+                } else if (line.isEmpty() && data.length() > 0) {
+                    dispatch(data.toString());
+                    data.setLength(0);
+                }
+                // 以冒号开头的是心跳，event: 等其他字段不需要处理
+            }
+        }
+    }
+
+    private void dispatch(String data) {
+        try {
+            eventPublisher.publishEvent(objectMapper.readValue(data, OrderStateChange.class));
+        } catch (IOException e) {
+            log.warn("Can not read order state change {}: {}", data, e.getMessage());
+        }
+    }
+}
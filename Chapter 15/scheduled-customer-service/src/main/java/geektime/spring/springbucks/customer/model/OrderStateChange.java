@@ -0,0 +1,13 @@
+package geektime.spring.springbucks.customer.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderStateChange {
+    private Long id;
+    private OrderState state;
+}
@@ -1,29 +1,75 @@
 package geektime.spring.springbucks.customer.scheduler;
 
 import geektime.spring.springbucks.customer.integration.CoffeeOrderService;
+import geektime.spring.springbucks.customer.integration.OrderStateSubscriber;
 import geektime.spring.springbucks.customer.model.CoffeeOrder;
 import geektime.spring.springbucks.customer.model.OrderState;
+import geektime.spring.springbucks.customer.model.OrderStateChange;
 import geektime.spring.springbucks.customer.model.OrderStateRequest;
 import geektime.spring.springbucks.customer.support.OrderWaitingEvent;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * 订单状态主要依靠 SSE 推送，定时任务只处理已经做好的订单
+ * 以下情况才用批量接口查询一次状态：推送连接断开、刚刚重连、距离上次校对超过 state-sync-interval
+ * 没有等待中的订单时不发起任何请求
+ * BREWED 推送可能早于 OrderWaitingEvent 到达，最近的 BREWED 订单 ID 无论是否已知都会保留一段时间
+ */
 @Component
 @Slf4j
 public class CoffeeOrderScheduler {
+    private static final int MAX_STATE_IDS = 200;
+    private static final int MAX_RECENT_BREWED = 1000;
+
     @Autowired
     private CoffeeOrderService coffeeOrderService;
+    @Autowired
+    private OrderStateSubscriber stateSubscriber;
+    @Value("${order.state-sync-interval:10000}")
+    private long syncInterval;
     private Map<Long, CoffeeOrder> orderMap = new ConcurrentHashMap<>();
+    private Set<Long> brewed = ConcurrentHashMap.newKeySet();
+    private Map<Long, Boolean> recentBrewed = Collections.synchronizedMap(
+            new LinkedHashMap<Long, Boolean>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest) {
+                    return size() > MAX_RECENT_BREWED;
+                }
+            });
+    private long lastSync = 0;
 
     @EventListener
     public void acceptOrder(OrderWaitingEvent event) {
-        orderMap.put(event.getOrder().getId(), event.getOrder());
+        Long id = event.getOrder().getId();
+        orderMap.put(id, event.getOrder());
+        // 先登记订单再检查，与 onStateChange 的顺序相反，两边并发时至少有一边能看到对方
+        if (recentBrewed.containsKey(id)) {
+            brewed.add(id);
+        }
+    }
+
+    @EventListener
+    public void onStateChange(OrderStateChange change) {
+        if (OrderState.BREWED != change.getState()) {
+            return;
+        }
+        recentBrewed.put(change.getId(), Boolean.TRUE);
+        if (orderMap.containsKey(change.getId())) {
+            brewed.add(change.getId());
+        }
     }
 
     @Scheduled(fixedRate = 1000)
@@ -31,16 +77,32 @@ public class CoffeeOrderScheduler {
         if (orderMap.isEmpty()) {
             return;
         }
-        log.info("I'm waiting for my coffee.");
-        orderMap.values().stream()
-                .map(o -> coffeeOrderService.getOrder(o.getId()))
-                .filter(o -> OrderState.BREWED == o.getState())
-                .forEach(o -> {
-                    log.info("Order [{}] is READY, I'll take it.", o);
-                    coffeeOrderService.updateState(o.getId(),
-                            OrderStateRequest.builder()
-                                    .state(OrderState.TAKEN).build());
-                    orderMap.remove(o.getId());
-                });
+        long now = System.currentTimeMillis();
+        long connectedAt = stateSubscriber.getConnectedAt();
+        if (connectedAt == 0 || connectedAt > lastSync || now - lastSync >= syncInterval) {
+            log.info("I'm waiting for my coffee.");
+            syncStates();
+            lastSync = now;
+        }
+        for (Long id : brewed) {
+            CoffeeOrder order = coffeeOrderService.updateState(id,
+                    OrderStateRequest.builder().state(OrderState.TAKEN).build());
+            log.info("Order [{}] is READY, I'll take it.", order);
+            orderMap.remove(id);
+            brewed.remove(id);
+            recentBrewed.remove(id);
+        }
+    }
+
+    private void syncStates() {
+        List<Long> ids = new ArrayList<>(orderMap.keySet());
+        for (int i = 0; i < ids.size(); i += MAX_STATE_IDS) {
+            coffeeOrderService.getStates(ids.subList(i, Math.min(i + MAX_STATE_IDS, ids.size())))
+                    .forEach((id, state) -> {
+                        if (OrderState.BREWED == state) {
+                            brewed.add(id);
+                        }
+                    });
+        }
     }
 }
@@ -0,0 +1,172 @@
+package geektime.spring.springbucks.barista.integration;
+
+import geektime.spring.springbucks.barista.model.OrderEvent;
+import geektime.spring.springbucks.barista.service.CoffeeOrderService;
+import geektime.spring.springbucks.barista.support.BatchProperties;
+import geektime.spring.springbucks.barista.support.MessageDeduplicator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cloud.stream.binder.PollableMessageSource;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.integration.IntegrationMessageHeaderAccessor;
+import org.springframework.integration.acks.AckUtils;
+import org.springframework.integration.acks.AcknowledgmentCallback;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * 批量模式：单线程从 newOrders 拉取消息，凑满 size 条或等待 linger 后一次性处理
+ * 一批订单在同一个事务里批量写入去重 Key，再用一条 UPDATE ... WHERE id IN (...) 标记为 BREWED，
+ * 完成的订单事件放在一条 finishedOrders 消息里发出（带 batch-size 头），之后整批确认，
+ * 任何一步失败则整批退回队列
+ */
+@Component
+@ConditionalOnProperty(name = "barista.batch.enabled", havingValue = "true")
+@Slf4j
+public class BatchOrderListener implements SmartLifecycle {
+    private static final ParameterizedTypeReference<OrderEvent> EVENT_TYPE =
+            new ParameterizedTypeReference<OrderEvent>() {};
+
+    @Autowired
+    private CoffeeOrderService orderService;
+    @Autowired
+    @Qualifier(Waiter.NEW_ORDERS)
+    private PollableMessageSource newOrders;
+    @Autowired
+    @Qualifier(Waiter.FINISHED_ORDERS)
+    private MessageChannel finishedOrdersMessageChannel;
+    @Autowired
+    private BatchProperties batchProperties;
+    @Autowired
+    private MessageDeduplicator deduplicator;
+    @Value("${order.barista-prefix}${random.uuid}")
+    private String barista;
+
+    private volatile boolean running = false;
+    private Thread poller;
+
+    @Override
+    public void start() {
+        running = true;
+        poller = new Thread(this::pollLoop, "barista-batch-poller");
+        poller.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (poller != null) {
+            poller.interrupt();
+            try {
+                poller.join(batchProperties.getLinger().toMillis() * 10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void pollLoop() {
+        List<OrderEvent> events = new ArrayList<>(batchProperties.getSize());
+        List<AcknowledgmentCallback> callbacks = new ArrayList<>(batchProperties.getSize());
+        long deadline = 0;
+        while (running) {
+            try {
+                boolean received = newOrders.poll(message -> {
+                    AcknowledgmentCallback callback = message.getHeaders().get(
+                            IntegrationMessageHeaderAccessor.ACKNOWLEDGMENT_CALLBACK,
+                            AcknowledgmentCallback.class);
+                    OrderEvent event = (OrderEvent) message.getPayload();
+                    if (callback != null) {
+                        callback.noAutoAck();
+                        callbacks.add(callback);
+                    }
+                    events.add(event);
+                }, EVENT_TYPE);
+                if (received && events.size() == 1 && deadline < System.currentTimeMillis()) {
+                    deadline = System.currentTimeMillis() + batchProperties.getLinger().toMillis();
+                }
+                if (!events.isEmpty() && (events.size() >= batchProperties.getSize()
+                        || System.currentTimeMillis() >= deadline)) {
+                    flush(events, callbacks);
+                    events.clear();
+                    callbacks.clear();
+                } else if (!received) {
+                    Thread.sleep(batchProperties.getIdleInterval().toMillis());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("Failed to poll new orders.", e);
+            }
+        }
+        if (!events.isEmpty()) {
+            // 停止时未处理的消息退回队列
+            callbacks.forEach(AckUtils::requeue);
+        }
+    }
+
+    private void flush(List<OrderEvent> events, List<AcknowledgmentCallback> callbacks) {
+        Map<Long, OrderEvent> orders = new LinkedHashMap<>();
+        Map<String, Long> messages = new LinkedHashMap<>();
+        events.forEach(e -> {
+            orders.put(e.getId(), e);
+            messages.put(MessageDeduplicator.key(Waiter.NEW_ORDERS, e), e.getId());
+        });
+        log.info("Receive {} new Orders {}.", events.size(), orders.keySet());
+        List<Long> brewed;
+        try {
+            // 重复消息不进入 brew 的事务，随整批一起确认
+            messages.keySet().removeAll(deduplicator.findDuplicates(Waiter.NEW_ORDERS, messages.keySet()));
+            brewed = messages.isEmpty() ? Collections.emptyList() : orderService.brew(messages, barista);
+            if (!brewed.isEmpty()) {
+                long time = System.currentTimeMillis();
+                List<OrderEvent> finished = brewed.stream()
+                        .map(id -> orders.get(id).brewed(barista, time))
+                        .collect(Collectors.toList());
+                finishedOrdersMessageChannel.send(MessageBuilder.withPayload(finished)
+                        .setHeader(Waiter.BATCH_SIZE_HEADER, finished.size())
+                        .build());
+            }
+        } catch (Exception e) {
+            log.error("Failed to brew orders {}, requeue them.", orders.keySet(), e);
+            callbacks.forEach(AckUtils::requeue);
+            return;
+        }
+        callbacks.forEach(AckUtils::accept);
+        log.info("Orders {} are READY.", brewed);
+    }
+
+    @Override
+    public boolean isAutoStartup() {
+        return true;
+    }
+
+    @Override
+    public void stop(Runnable callback) {
+        stop();
+        callback.run();
+    }
+
+    @Override
+    public int getPhase() {
+        return Integer.MAX_VALUE;
+    }
+}
@@ -0,0 +1,17 @@
+package geektime.spring.springbucks.barista.integration;
+
+import org.springframework.cloud.stream.annotation.Input;
+import org.springframework.cloud.stream.annotation.Output;
+import org.springframework.cloud.stream.binder.PollableMessageSource;
+import org.springframework.messaging.MessageChannel;
+
+/**
+ * 批量模式下以 poll 的方式消费 newOrders
+ */
+public interface BatchWaiter {
+    @Input(Waiter.NEW_ORDERS)
+    PollableMessageSource newOrders();
+
+    @Output(Waiter.FINISHED_ORDERS)
+    MessageChannel finishedOrders();
+}
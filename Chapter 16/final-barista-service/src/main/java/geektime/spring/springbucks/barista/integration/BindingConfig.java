@@ -0,0 +1,23 @@
+package geektime.spring.springbucks.barista.integration;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cloud.stream.annotation.EnableBinding;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 根据 barista.batch.enabled 选择以订阅还是 poll 的方式绑定 newOrders
+ */
+@Configuration
+public class BindingConfig {
+    @Configuration
+    @ConditionalOnProperty(name = "barista.batch.enabled", havingValue = "false", matchIfMissing = true)
+    @EnableBinding(Waiter.class)
+    static class StreamingBindingConfig {
+    }
+
+    @Configuration
+    @ConditionalOnProperty(name = "barista.batch.enabled", havingValue = "true")
+    @EnableBinding(BatchWaiter.class)
+    static class BatchBindingConfig {
+    }
+}
@@ -1,44 +1,91 @@
 package geektime.spring.springbucks.barista.integration;
 
+import com.rabbitmq.client.Channel;
+import geektime.spring.springbucks.barista.model.Coffee;
 import geektime.spring.springbucks.barista.model.CoffeeOrder;
-import geektime.spring.springbucks.barista.model.OrderState;
-import geektime.spring.springbucks.barista.repository.CoffeeOrderRepository;
+import geektime.spring.springbucks.barista.model.OrderEvent;
+import geektime.spring.springbucks.barista.service.BrewTask;
+import geektime.spring.springbucks.barista.service.BrewingEngine;
+import geektime.spring.springbucks.barista.service.CoffeeOrderService;
+import geektime.spring.springbucks.barista.support.MessageDeduplicator;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.support.AmqpHeaders;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.cloud.stream.annotation.StreamListener;
-import org.springframework.messaging.MessageChannel;
-import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
 
+import java.io.IOException;
+import java.util.stream.Collectors;
+
+/**
+ * 收到新订单后交给 BrewingEngine 排队制作，制作完成后才确认消息
+ * 需要将 newOrders 的 acknowledge-mode 设置为 MANUAL
+ */
 @Component
+@ConditionalOnProperty(name = "barista.batch.enabled", havingValue = "false", matchIfMissing = true)
 @Slf4j
-@Transactional
 public class OrderListener {
+    public static final String LANE_HEADER = "lane";
+
+    @Autowired
+    private CoffeeOrderService orderService;
     @Autowired
-    private CoffeeOrderRepository orderRepository;
+    private BrewingEngine brewingEngine;
     @Autowired
-    @Qualifier(Waiter.FINISHED_ORDERS)
-    private MessageChannel finishedOrdersMessageChannel;
-    @Value("${order.barista-prefix}${random.uuid}")
-    private String barista;
+    private MessageDeduplicator deduplicator;
 
     @StreamListener(Waiter.NEW_ORDERS)
-    public void processNewOrder(Long id) {
-        CoffeeOrder o = orderRepository.getOne(id);
-        if (o == null) {
-            log.warn("Order id {} is NOT valid.", id);
+    public void processNewOrder(@Payload OrderEvent event,
+                                @Header(name = LANE_HEADER, required = false) String lane,
+                                @Header(name = AmqpHeaders.CHANNEL, required = false) Channel channel,
+                                @Header(name = AmqpHeaders.DELIVERY_TAG, required = false) Long deliveryTag)
+            throws InterruptedException {
+        Long id = event.getId();
+        log.info("Receive a new Order {}.", id);
+        String key = MessageDeduplicator.key(Waiter.NEW_ORDERS, event);
+        if (deduplicator.isDuplicate(Waiter.NEW_ORDERS, key)) {
+            acknowledge(id, channel, deliveryTag, true);
+            return;
+        }
+        if (!event.hasState()) {
+            // 旧版本的消息只有订单 ID，需要查询订单内容
+            CoffeeOrder order = orderService.get(id);
+            event = order == null ? event : event.toBuilder()
+                    .customer(order.getCustomer())
+                    .state(order.getState())
+                    .items(order.getItems().stream().map(Coffee::getName).collect(Collectors.toList()))
+                    .waiter(order.getWaiter())
+                    .build();
+        }
+        // 最终是否制作由带条件的 UPDATE 决定，这里只提前过滤明显无效的订单
+        if (event.getState() == null || !CoffeeOrderService.PENDING_STATES.contains(event.getState())) {
+            log.warn("Order id {} is NOT valid or already brewed.", id);
+            acknowledge(id, channel, deliveryTag, true);
             return;
         }
-        log.info("Receive a new Order {}. Waiter: {}. Customer: {}",
-                id, o.getWaiter(), o.getCustomer());
-        o.setState(OrderState.BREWED);
-        o.setBarista(barista);
-        orderRepository.save(o);
-        log.info("Order {} is READY.", id);
-        finishedOrdersMessageChannel.send(MessageBuilder.withPayload(id).build());
+        String signature = event.getItems() == null ? "" : event.getItems().stream()
+                .sorted()
+                .collect(Collectors.joining(","));
+        // 去重 Key 在制作订单的事务里写入，见 CoffeeOrderService.brew()
+        brewingEngine.submit(new BrewTask(event, key, BrewTask.Lane.of(lane), signature,
+                success -> acknowledge(id, channel, deliveryTag, success)));
     }
 
+    private void acknowledge(Long id, Channel channel, Long deliveryTag, boolean success) {
+        if (channel == null || deliveryTag == null) {
+            return;
+        }
+        try {
+            if (success) {
+                channel.basicAck(deliveryTag, false);
+            } else {
+                channel.basicNack(deliveryTag, false, true);
+            }
+        } catch (IOException e) {
+            log.warn("Can not acknowledge Order {}: {}", id, e.getMessage());
+        }
+    }
 }
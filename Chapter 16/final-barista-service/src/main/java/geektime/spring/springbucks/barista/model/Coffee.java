@@ -0,0 +1,20 @@
+package geektime.spring.springbucks.barista.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+@Entity
+@Table(name = "T_COFFEE")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class Coffee {
+    @Id
+    private Long id;
+    private String name;
+}
@@ -12,8 +12,12 @@ import javax.persistence.Enumerated;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.JoinTable;
+import javax.persistence.ManyToMany;
+import javax.persistence.OrderBy;
 import javax.persistence.Table;
 import java.util.Date;
+import java.util.List;
 
 @Entity
 @Table(name = "T_ORDER")
@@ -25,6 +29,10 @@ public class CoffeeOrder {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
     private String customer;
+    @ManyToMany
+    @JoinTable(name = "T_ORDER_COFFEE")
+    @OrderBy("id")
+    private List<Coffee> items;
     private String waiter;
     private String barista;
     @Enumerated
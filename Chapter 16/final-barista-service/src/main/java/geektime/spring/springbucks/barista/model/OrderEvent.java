@@ -0,0 +1,56 @@
+package geektime.spring.springbucks.barista.model;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * newOrders / finishedOrders / notifyOrders 上传递的订单事件，携带消费者需要的订单状态
+ * 金额为以分为单位的整数，时间为毫秒时间戳，空字段不输出
+ * 旧版本只发送订单 ID，反序列化后 version 为 0，消费者需要自行查询订单
+ */
+@Data
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class OrderEvent {
+    public static final int VERSION = 1;
+
+    private int version;
+    private Long id;
+    private String customer;
+    private OrderState state;
+    private List<String> items;
+    private Long total;
+    private String waiter;
+    private String barista;
+    private Long createTime;
+    private Long updateTime;
+
+    /**
+     * 兼容只有订单 ID 的旧消息；必须显式指定 DELEGATING，
+     * 否则在 -parameters 与 ParameterNamesModule 下参数名 id 会让 Jackson 当作属性构造器处理
+     */
+    @JsonCreator(mode = JsonCreator.Mode.DELEGATING)
+    public static OrderEvent of(long id) {
+        OrderEvent event = new OrderEvent();
+        event.setId(id);
+        return event;
+    }
+
+    public boolean hasState() {
+        return version >= VERSION;
+    }
+
+    public OrderEvent brewed(String barista, long time) {
+        return toBuilder().state(OrderState.BREWED).barista(barista).updateTime(time).build();
+    }
+}
@@ -0,0 +1,21 @@
+package geektime.spring.springbucks.barista.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.util.Date;
+
+@Entity
+@Table(name = "T_PROCESSED_MESSAGE")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProcessedMessage {
+    @Id
+    private String messageKey;
+    private Date processedAt;
+}
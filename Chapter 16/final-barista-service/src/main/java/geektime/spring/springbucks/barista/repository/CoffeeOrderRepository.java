@@ -1,7 +1,35 @@
 package geektime.spring.springbucks.barista.repository;
 
 import geektime.spring.springbucks.barista.model.CoffeeOrder;
+import geektime.spring.springbucks.barista.model.OrderState;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import javax.persistence.LockModeType;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
 
 public interface CoffeeOrderRepository extends JpaRepository<CoffeeOrder, Long> {
+    @EntityGraph(attributePaths = "items")
+    Optional<CoffeeOrder> findWithItemsById(Long id);
+
+    /**
+     * SELECT ... FOR UPDATE，并发的事务会等待当前事务提交后再读到最新状态
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select o from CoffeeOrder o where o.id in :ids and o.state in :states")
+    List<CoffeeOrder> lockInStates(@Param("ids") Collection<Long> ids,
+                                   @Param("states") Collection<OrderState> states);
+
+    @Modifying(clearAutomatically = true)
+    @Query(value = "update t_order set state = :state, barista = :barista, update_time = :now " +
+            "where id in (:ids) and state < :state", nativeQuery = true)
+    int updateStates(@Param("ids") Collection<Long> ids, @Param("state") int state,
+                     @Param("barista") String barista, @Param("now") Date now);
 }
@@ -0,0 +1,17 @@
+package geektime.spring.springbucks.barista.repository;
+
+import geektime.spring.springbucks.barista.model.ProcessedMessage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Date;
+
+public interface ProcessedMessageRepository extends JpaRepository<ProcessedMessage, String> {
+    @Modifying
+    @Transactional
+    @Query("delete from ProcessedMessage m where m.processedAt < :before")
+    int deleteProcessedBefore(@Param("before") Date before);
+}
@@ -0,0 +1,54 @@
+package geektime.spring.springbucks.barista.service;
+
+import geektime.spring.springbucks.barista.model.OrderEvent;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.function.Consumer;
+
+/**
+ * 等待制作的订单，signature 相同的订单可以合并在一个周期里制作
+ */
+@Getter
+@ToString(exclude = "completion")
+public class BrewTask {
+    private final OrderEvent event;
+    private final String messageKey;
+    private final Lane lane;
+    private final String signature;
+    private final long enqueuedAt = System.nanoTime();
+    private final Consumer<Boolean> completion;
+
+    public BrewTask(OrderEvent event, String messageKey, Lane lane, String signature,
+                    Consumer<Boolean> completion) {
+        this.event = event;
+        this.messageKey = messageKey;
+        this.lane = lane;
+        this.signature = signature;
+        this.completion = completion;
+    }
+
+    public Long getId() {
+        return event.getId();
+    }
+
+    /**
+     * 制作完成或放弃时回调，success 为 false 表示需要退回队列重新投递
+     */
+    void complete(boolean success) {
+        completion.accept(success);
+    }
+
+    public enum Lane {
+        EXPRESS, STANDARD;
+
+        public static Lane of(String name) {
+            for (Lane lane : values()) {
+                if (lane.name().equalsIgnoreCase(name)) {
+                    return lane;
+                }
+            }
+            return STANDARD;
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package geektime.spring.springbucks.barista.service;
+
+import geektime.spring.springbucks.barista.integration.Waiter;
+import geektime.spring.springbucks.barista.support.BrewingProperties;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+/**
+ * 咖啡制作引擎：有界等待队列 + 固定数量的咖啡师线程
+ * 队列按 EXPRESS / STANDARD 分通道，咖啡师优先取加急订单，
+ * 取单时把队列里同款的订单一起带走，合并在一个周期里制作
+ * 队列满时 submit 会阻塞消费线程，配合 prefetch 让 RabbitMQ 停止投递
+ */
+@Service
+@ConditionalOnProperty(name = "barista.batch.enabled", havingValue = "false", matchIfMissing = true)
+@Slf4j
+public class BrewingEngine implements SmartLifecycle, MeterBinder {
+    @Autowired
+    private CoffeeOrderService orderService;
+    @Autowired
+    @Qualifier(Waiter.FINISHED_ORDERS)
+    private MessageChannel finishedOrdersMessageChannel;
+    @Autowired
+    private BrewingProperties properties;
+    @Value("${order.barista-prefix}${random.uuid}")
+    private String baristaPrefix;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Map<BrewTask.Lane, Deque<BrewTask>> lanes = new EnumMap<>(BrewTask.Lane.class);
+    private int expressStreak = 0;
+
+    private Semaphore permits;
+    private ExecutorService workers;
+    private volatile boolean running = false;
+
+    private final Map<BrewTask.Lane, Timer> waitTimers = new EnumMap<>(BrewTask.Lane.class);
+    private Timer brewTimer;
+    private DistributionSummary cycleSize;
+
+    public BrewingEngine() {
+        for (BrewTask.Lane lane : BrewTask.Lane.values()) {
+            lanes.put(lane, new ArrayDeque<>());
+        }
+    }
+
+    /**
+     * 队列已满时阻塞，直到有咖啡师取走订单
+     */
+    public void submit(BrewTask task) throws InterruptedException {
+        permits.acquire();
+        lock.lock();
+        try {
+            if (!running) {
+                permits.release();
+                throw new IllegalStateException("Brewing engine is stopped.");
+            }
+            lanes.get(task.getLane()).addLast(task);
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void start() {
+        permits = new Semaphore(properties.getCapacity());
+        workers = Executors.newFixedThreadPool(properties.getWorkers(),
+                new CustomizableThreadFactory("barista-worker-"));
+        running = true;
+        for (int i = 0; i < properties.getWorkers(); i++) {
+            String barista = baristaPrefix + "-" + i;
+            workers.execute(() -> work(barista));
+        }
+        log.info("Brewing engine started with {} baristas.", properties.getWorkers());
+    }
+
+    @Override
+    public void stop() {
+        lock.lock();
+        try {
+            running = false;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(properties.getBrewTime().toMillis() * 2, TimeUnit.MILLISECONDS)) {
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        // 还没开始制作的订单退回队列，由其他实例处理
+        lock.lock();
+        try {
+            lanes.values().forEach(queue -> {
+                queue.forEach(task -> task.complete(false));
+                queue.clear();
+            });
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void stop(Runnable callback) {
+        stop();
+        callback.run();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public boolean isAutoStartup() {
+        return true;
+    }
+
+    /**
+     * 先于 Binding 启动、晚于 Binding 停止
+     */
+    @Override
+    public int getPhase() {
+        return Integer.MAX_VALUE - 2000;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (BrewTask.Lane lane : BrewTask.Lane.values()) {
+            Gauge.builder("barista.queue.depth", lane, this::queueDepth)
+                    .tag("lane", lane.name())
+                    .register(registry);
+            waitTimers.put(lane, Timer.builder("barista.brew.wait")
+                    .tag("lane", lane.name())
+                    .register(registry));
+        }
+        brewTimer = Timer.builder("barista.brew.time").register(registry);
+        cycleSize = DistributionSummary.builder("barista.brew.cycle.size").register(registry);
+    }
+
+    /**
+     * ArrayDeque 不是线程安全的，读取长度同样需要持有锁
+     */
+    private int queueDepth(BrewTask.Lane lane) {
+        lock.lock();
+        try {
+            return lanes.get(lane).size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void work(String barista) {
+        while (running) {
+            List<BrewTask> cycle;
+            try {
+                cycle = take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (cycle != null) {
+                brew(barista, cycle);
+            }
+        }
+    }
+
+    private List<BrewTask> take() throws InterruptedException {
+        List<BrewTask> cycle = new ArrayList<>();
+        lock.lockInterruptibly();
+        try {
+            while (running && lanes.values().stream().allMatch(Deque::isEmpty)) {
+                notEmpty.await();
+            }
+            if (!running) {
+                return null;
+            }
+            BrewTask head = lanes.get(pickLane()).pollFirst();
+            cycle.add(head);
+            for (Deque<BrewTask> queue : lanes.values()) {
+                Iterator<BrewTask> iterator = queue.iterator();
+                while (iterator.hasNext() && cycle.size() < properties.getMaxCoalesce()) {
+                    BrewTask task = iterator.next();
+                    if (task.getSignature().equals(head.getSignature())) {
+                        cycle.add(task);
+                        iterator.remove();
+                    }
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        permits.release(cycle.size());
+        return cycle;
+    }
+
+    private BrewTask.Lane pickLane() {
+        boolean express = !lanes.get(BrewTask.Lane.EXPRESS).isEmpty();
+        boolean standard = !lanes.get(BrewTask.Lane.STANDARD).isEmpty();
+        if (express && (!standard || expressStreak < properties.getExpressRatio())) {
+            expressStreak++;
+            return BrewTask.Lane.EXPRESS;
+        }
+        expressStreak = 0;
+        return BrewTask.Lane.STANDARD;
+    }
+
+    private void brew(String barista, List<BrewTask> cycle) {
+        long now = System.nanoTime();
+        cycle.forEach(t -> waitTimers.get(t.getLane()).record(now - t.getEnqueuedAt(), TimeUnit.NANOSECONDS));
+        List<Long> ids = cycle.stream().map(BrewTask::getId).distinct().collect(Collectors.toList());
+        log.info("{} starts brewing {} for Orders {}.", barista, cycle.get(0).getSignature(), ids);
+        try {
+            orderService.startBrewing(ids, barista);
+            Thread.sleep(properties.getBrewTime().toMillis()
+                    + properties.getExtraCupTime().toMillis() * (cycle.size() - 1));
+            // 只通知本次 UPDATE 真正完成的订单，同一订单的重复投递可能落在同一个周期里，只通知一次
+            Map<String, Long> messages = cycle.stream().collect(Collectors.toMap(
+                    BrewTask::getMessageKey, BrewTask::getId, (a, b) -> a, LinkedHashMap::new));
+            Set<Long> brewed = new LinkedHashSet<>(orderService.brew(messages, barista));
+            Set<Long> announced = new HashSet<>();
+            long time = System.currentTimeMillis();
+            cycle.stream()
+                    .filter(t -> brewed.contains(t.getId()) && announced.add(t.getId()))
+                    .forEach(t -> finishedOrdersMessageChannel.send(
+                            MessageBuilder.withPayload(t.getEvent().brewed(barista, time)).build()));
+            brewTimer.record(System.nanoTime() - now, TimeUnit.NANOSECONDS);
+            cycleSize.record(cycle.size());
+            cycle.forEach(t -> t.complete(true));
+            log.info("Orders {} are READY.", brewed);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cycle.forEach(t -> t.complete(false));
+        } catch (Exception e) {
+            log.error("Failed to brew Orders {}, requeue them.", ids, e);
+            cycle.forEach(t -> t.complete(false));
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package geektime.spring.springbucks.barista.service;
+
+import geektime.spring.springbucks.barista.integration.Waiter;
+import geektime.spring.springbucks.barista.model.CoffeeOrder;
+import geektime.spring.springbucks.barista.model.OrderState;
+import geektime.spring.springbucks.barista.repository.CoffeeOrderRepository;
+import geektime.spring.springbucks.barista.support.MessageDeduplicator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+@Service
+@Transactional
+@Slf4j
+public class CoffeeOrderService {
+    public static final List<OrderState> PENDING_STATES =
+            Arrays.asList(OrderState.INIT, OrderState.PAID, OrderState.BREWING);
+
+    @Autowired
+    private CoffeeOrderRepository orderRepository;
+    @Autowired
+    private MessageDeduplicator deduplicator;
+
+    @Transactional(readOnly = true)
+    public CoffeeOrder get(Long id) {
+        return orderRepository.findWithItemsById(id).orElse(null);
+    }
+
+    public int startBrewing(Collection<Long> ids, String barista) {
+        return orderRepository.updateStates(ids, OrderState.BREWING.ordinal(), barista, new Date());
+    }
+
+    /**
+     * 将仍未完成的订单一次性标记为 BREWED，返回实际被更新的订单 ID
+     * messages 为 newOrders 消息的去重 Key 到订单 ID 的映射，Key 在同一个事务里抢占，
+     * 已经处理过的消息直接跳过，事务回滚时 Key 一起撤销
+     * 再锁住仍处于未完成状态的订单后更新，并发或重复投递的同一订单只有一个事务能拿到，
+     * 其余事务等锁释放后读到 BREWED，返回空列表，不会重复发出完成通知
+     */
+    public List<Long> brew(Map<String, Long> messages, String barista) {
+        Set<Long> ids = deduplicator.claim(Waiter.NEW_ORDERS, messages.keySet()).stream()
+                .map(messages::get)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Long> pending = orderRepository.lockInStates(ids, PENDING_STATES).stream()
+                .map(CoffeeOrder::getId)
+                .collect(Collectors.toList());
+        if (pending.size() < ids.size()) {
+            Set<Long> invalid = new LinkedHashSet<>(ids);
+            invalid.removeAll(pending);
+            log.warn("Order ids {} are NOT valid or already brewed.", invalid);
+        }
+        if (pending.isEmpty()) {
+            return Collections.emptyList();
+        }
+        int updated = orderRepository.updateStates(pending, OrderState.BREWED.ordinal(), barista, new Date());
+        if (updated != pending.size()) {
+            // 行锁保证不会发生，出现说明有绕过 lockInStates 的写入，整批回滚重试
+            throw new IllegalStateException("Expect to brew " + pending.size() + " orders, but "
+                    + updated + " updated.");
+        }
+        return pending;
+    }
+}
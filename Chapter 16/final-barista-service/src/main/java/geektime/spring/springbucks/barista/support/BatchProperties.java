@@ -0,0 +1,26 @@
+package geektime.spring.springbucks.barista.support;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@ConfigurationProperties("barista.batch")
+@Data
+@Component
+public class BatchProperties {
+    private boolean enabled = false;
+    /**
+     * 每批最多处理的订单数
+     */
+    private int size = 50;
+    /**
+     * 凑不满一批时最多等待的时间
+     */
+    private Duration linger = Duration.ofMillis(200);
+    /**
+     * 队列为空时两次 poll 之间的间隔
+     */
+    private Duration idleInterval = Duration.ofMillis(50);
+}
@@ -0,0 +1,37 @@
+package geektime.spring.springbucks.barista.support;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@ConfigurationProperties("barista.brewing")
+@Data
+@Component
+public class BrewingProperties {
+    /**
+     * 同时制作咖啡的咖啡师数量
+     */
+    private int workers = 4;
+    /**
+     * 等待制作的订单上限，队列满时停止从 newOrders 消费
+     */
+    private int capacity = 50;
+    /**
+     * 一次制作最多合并的同款订单数
+     */
+    private int maxCoalesce = 5;
+    /**
+     * 连续处理多少个加急订单后让普通订单插一个队，避免饿死
+     */
+    private int expressRatio = 3;
+    /**
+     * 每个制作周期的基础耗时
+     */
+    private Duration brewTime = Duration.ofMillis(500);
+    /**
+     * 合并制作时每多一单增加的耗时
+     */
+    private Duration extraCupTime = Duration.ofMillis(100);
+}
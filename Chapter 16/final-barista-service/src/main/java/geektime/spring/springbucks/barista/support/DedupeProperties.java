@@ -0,0 +1,21 @@
+package geektime.spring.springbucks.barista.support;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@ConfigurationProperties("dedupe")
+@Data
+@Component
+public class DedupeProperties {
+    /**
+     * 内存中最多保留的消息 Key 数量
+     */
+    private int maximumSize = 10000;
+    /**
+     * 去重表中记录的保留时间
+     */
+    private Duration timeToLive = Duration.ofDays(1);
+}
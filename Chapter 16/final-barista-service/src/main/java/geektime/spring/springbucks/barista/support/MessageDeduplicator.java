@@ -0,0 +1,144 @@
+package geektime.spring.springbucks.barista.support;
+
+import geektime.spring.springbucks.barista.model.OrderEvent;
+import geektime.spring.springbucks.barista.repository.ProcessedMessageRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * 幂等消费：消费线程先查内存 LRU，未命中再批量查 T_PROCESSED_MESSAGE，在排队、更新订单之前丢弃处理过的消息；
+ * 这一步只是预检，真正的判断在处理消息的事务里完成，用 INSERT IGNORE 写入 T_PROCESSED_MESSAGE 抢占 Key，
+ * 写入成功的消息才处理，并发的重复投递会等待先写入的事务提交，然后被忽略
+ * Key 为 Binding:订单ID:订单状态，同一订单的同一次状态流转只处理一次
+ */
+@Component
+@Slf4j
+public class MessageDeduplicator {
+    private static final String CLAIM_SQL =
+            "insert ignore into t_processed_message (message_key, processed_at) values (?, ?)";
+
+    private final Map<String, Boolean> recent;
+    private final ProcessedMessageRepository repository;
+    private final JdbcTemplate jdbcTemplate;
+    private final DedupeProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    public MessageDeduplicator(ProcessedMessageRepository repository, JdbcTemplate jdbcTemplate,
+                               DedupeProperties properties, MeterRegistry meterRegistry) {
+        this.repository = repository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        int maximumSize = properties.getMaximumSize();
+        this.recent = Collections.synchronizedMap(new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > maximumSize;
+            }
+        });
+    }
+
+    public static String key(String binding, OrderEvent event) {
+        return binding + ":" + event.getId() + ":" + (event.getState() == null ? "" : event.getState());
+    }
+
+    public boolean isDuplicate(String binding, String key) {
+        return !findDuplicates(binding, Collections.singleton(key)).isEmpty();
+    }
+
+    /**
+     * 返回已经处理过的 Key，内存未命中的 Key 用一条 SELECT ... WHERE message_key IN (...) 查询，命中的放入内存
+     * 重启后 LRU 为空，重复投递的消息也能在消费线程上被丢弃；没查到不代表没有处理过，最终以 claim() 为准
+     */
+    public Set<String> findDuplicates(String binding, Collection<String> keys) {
+        Set<String> duplicates = new LinkedHashSet<>();
+        List<String> unknown = new ArrayList<>();
+        for (String key : keys) {
+            if (recent.containsKey(key)) {
+                counter(binding, "memory").increment();
+                log.info("Drop duplicated message {} found in memory.", key);
+                duplicates.add(key);
+            } else {
+                unknown.add(key);
+            }
+        }
+        if (!unknown.isEmpty()) {
+            repository.findAllById(unknown).forEach(m -> {
+                counter(binding, "store").increment();
+                log.info("Drop duplicated message {} found in store.", m.getMessageKey());
+                recent.put(m.getMessageKey(), Boolean.TRUE);
+                duplicates.add(m.getMessageKey());
+            });
+        }
+        return duplicates;
+    }
+
+    /**
+     * 在调用方的事务里批量写入 Key，返回本事务抢到的 Key，其余的已经被处理过或正在被其他事务处理
+     * 按 Key 排序后写入，避免两个事务以相反的顺序等待对方的行锁
+     * 依赖 JDBC 返回每一行的更新数，数据源不能开启 rewriteBatchedStatements
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public Set<String> claim(String binding, Collection<String> keys) {
+        List<String> sorted = new ArrayList<>(new TreeSet<>(keys));
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        int[] counts = jdbcTemplate.batchUpdate(CLAIM_SQL, sorted.stream()
+                .map(key -> new Object[] { key, now })
+                .collect(Collectors.toList()));
+        Set<String> claimed = new LinkedHashSet<>();
+        for (int i = 0; i < sorted.size(); i++) {
+            String key = sorted.get(i);
+            if (counts[i] == 0) {
+                // 预检之后才写入的 Key，通常是并发的重复投递
+                counter(binding, "concurrent").increment();
+                log.info("Drop duplicated message {} claimed by another consumer.", key);
+                recent.put(key, Boolean.TRUE);
+            } else {
+                counter(binding, "miss").increment();
+                claimed.add(key);
+            }
+        }
+        // 事务回滚时 Key 也被撤销，消息重新投递后还要再处理
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                claimed.forEach(key -> recent.put(key, Boolean.TRUE));
+            }
+        });
+        return claimed;
+    }
+
+    @Scheduled(fixedDelayString = "${dedupe.cleanup-interval:600000}")
+    public void cleanup() {
+        Date before = new Date(System.currentTimeMillis() - properties.getTimeToLive().toMillis());
+        int count = repository.deleteProcessedBefore(before);
+        if (count > 0) {
+            log.info("Removed {} processed message records.", count);
+        }
+    }
+
+    private Counter counter(String binding, String result) {
+        return meterRegistry.counter("message.dedupe", "binding", binding, "result", result);
+    }
+}
@@ -0,0 +1,137 @@
+package geektime.spring.springbucks.barista.integration;
+
+import geektime.spring.springbucks.barista.model.OrderEvent;
+import geektime.spring.springbucks.barista.model.OrderState;
+import geektime.spring.springbucks.barista.service.CoffeeOrderService;
+import geektime.spring.springbucks.barista.support.BatchProperties;
+import geektime.spring.springbucks.barista.support.MessageDeduplicator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.cloud.stream.binder.PollableMessageSource;
+import org.springframework.integration.IntegrationMessageHeaderAccessor;
+import org.springframework.integration.acks.AcknowledgmentCallback;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * PollableMessageSource 用 Mock 代替，每次 poll 从队列里取一条消息交给处理器
+ * linger 设得足够长，只有凑满 size 条才会处理
+ */
+public class BatchOrderListenerTests {
+    private final Queue<Message<?>> pending = new ConcurrentLinkedQueue<>();
+    private final BlockingQueue<Message<?>> finished = new LinkedBlockingQueue<>();
+    private final List<AcknowledgmentCallback> callbacks = new ArrayList<>();
+    private CoffeeOrderService orderService;
+    private BatchOrderListener listener;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        BatchProperties properties = new BatchProperties();
+        properties.setSize(3);
+        properties.setLinger(Duration.ofSeconds(10));
+        properties.setIdleInterval(Duration.ofMillis(10));
+
+        PollableMessageSource newOrders = mock(PollableMessageSource.class);
+        when(newOrders.poll(any(MessageHandler.class), any())).thenAnswer(invocation -> {
+            Message<?> message = pending.poll();
+            if (message == null) {
+                return false;
+            }
+            invocation.<MessageHandler>getArgument(0).handleMessage(message);
+            return true;
+        });
+        MessageChannel finishedOrders = (message, timeout) -> finished.add(message);
+        MessageDeduplicator deduplicator = mock(MessageDeduplicator.class);
+        when(deduplicator.findDuplicates(eq(Waiter.NEW_ORDERS), anyCollection())).thenReturn(Collections.emptySet());
+        orderService = mock(CoffeeOrderService.class);
+
+        listener = new BatchOrderListener();
+        ReflectionTestUtils.setField(listener, "orderService", orderService);
+        ReflectionTestUtils.setField(listener, "newOrders", newOrders);
+        ReflectionTestUtils.setField(listener, "finishedOrdersMessageChannel", finishedOrders);
+        ReflectionTestUtils.setField(listener, "batchProperties", properties);
+        ReflectionTestUtils.setField(listener, "deduplicator", deduplicator);
+        ReflectionTestUtils.setField(listener, "barista", "springbucks-test");
+    }
+
+    @After
+    public void tearDown() {
+        listener.stop();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void messagesAreBrewedAndAnnouncedAsOneBatch() throws Exception {
+        when(orderService.brew(anyMap(), anyString())).thenAnswer(invocation ->
+                new ArrayList<>(invocation.<Map<String, Long>>getArgument(0).values()));
+        Arrays.asList(1L, 2L, 3L).forEach(this::offer);
+
+        listener.start();
+
+        Message<?> message = finished.poll(2, TimeUnit.SECONDS);
+        assertNotNull(message);
+        assertEquals(3, message.getHeaders().get(Waiter.BATCH_SIZE_HEADER));
+        List<OrderEvent> events = (List<OrderEvent>) message.getPayload();
+        assertEquals(Arrays.asList(1L, 2L, 3L), events.stream().map(OrderEvent::getId).collect(Collectors.toList()));
+        assertTrue(events.stream().allMatch(e -> e.getState() == OrderState.BREWED));
+        verify(orderService, times(1)).brew(anyMap(), eq("springbucks-test"));
+        callbacks.forEach(callback -> verify(callback, timeout(2000)).acknowledge(AcknowledgmentCallback.Status.ACCEPT));
+        assertTrue(finished.isEmpty());
+    }
+
+    @Test
+    public void failedBatchIsRequeued() throws Exception {
+        when(orderService.brew(anyMap(), anyString())).thenThrow(new IllegalStateException("database is down"));
+        Arrays.asList(1L, 2L, 3L).forEach(this::offer);
+
+        listener.start();
+
+        for (AcknowledgmentCallback callback : callbacks) {
+            verify(callback, timeout(2000)).acknowledge(AcknowledgmentCallback.Status.REQUEUE);
+            verify(callback, never()).acknowledge(AcknowledgmentCallback.Status.ACCEPT);
+        }
+        assertTrue(finished.isEmpty());
+    }
+
+    private void offer(Long id) {
+        AcknowledgmentCallback callback = mock(AcknowledgmentCallback.class);
+        callbacks.add(callback);
+        OrderEvent event = OrderEvent.builder().version(OrderEvent.VERSION).id(id).state(OrderState.PAID).build();
+        pending.add(MessageBuilder.withPayload(event)
+                .setHeader(IntegrationMessageHeaderAccessor.ACKNOWLEDGMENT_CALLBACK, callback)
+                .build());
+    }
+}
@@ -0,0 +1,51 @@
+package geektime.spring.springbucks.barista.model;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.paramnames.ParameterNamesModule;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 与 Spring Boot 一样注册 ParameterNamesModule，确认新旧两种消息都能反序列化
+ */
+public class OrderEventTests {
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new ParameterNamesModule());
+
+    @Test
+    public void readLegacyIdOnlyPayload() throws Exception {
+        OrderEvent event = objectMapper.readValue("42", OrderEvent.class);
+        assertEquals(Long.valueOf(42), event.getId());
+        assertFalse(event.hasState());
+        assertNull(event.getState());
+    }
+
+    @Test
+    public void readFullPayload() throws Exception {
+        OrderEvent event = objectMapper.readValue("{\"version\":1,\"id\":42,\"customer\":\"Li Lei\","
+                + "\"state\":\"PAID\",\"items\":[\"latte\",\"mocha\"],\"total\":4500,"
+                + "\"waiter\":\"springbucks-1\",\"createTime\":1555555555000,\"unknown\":true}", OrderEvent.class);
+        assertEquals(Long.valueOf(42), event.getId());
+        assertTrue(event.hasState());
+        assertEquals(OrderState.PAID, event.getState());
+        assertEquals(Arrays.asList("latte", "mocha"), event.getItems());
+        assertEquals(Long.valueOf(4500), event.getTotal());
+        assertEquals(Long.valueOf(1555555555000L), event.getCreateTime());
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        OrderEvent event = OrderEvent.builder()
+                .version(OrderEvent.VERSION)
+                .id(7L)
+                .state(OrderState.BREWED)
+                .barista("springbucks-0")
+                .build();
+        assertEquals(event, objectMapper.readValue(objectMapper.writeValueAsString(event), OrderEvent.class));
+    }
+}
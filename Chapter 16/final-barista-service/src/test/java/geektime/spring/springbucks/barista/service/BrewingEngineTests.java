@@ -0,0 +1,172 @@
+package geektime.spring.springbucks.barista.service;
+
+import geektime.spring.springbucks.barista.integration.Waiter;
+import geektime.spring.springbucks.barista.model.CoffeeOrder;
+import geektime.spring.springbucks.barista.model.OrderEvent;
+import geektime.spring.springbucks.barista.model.OrderState;
+import geektime.spring.springbucks.barista.repository.CoffeeOrderRepository;
+import geektime.spring.springbucks.barista.support.BrewingProperties;
+import geektime.spring.springbucks.barista.support.MessageDeduplicator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 只有一个咖啡师，先用一单占住他，再往队列里放订单，之后的制作顺序就是确定的
+ * 仓库用 Mock 代替，把每个周期 startBrewing 的订单 ID 记到 cycles 里
+ */
+public class BrewingEngineTests {
+    private final BlockingQueue<List<Long>> cycles = new LinkedBlockingQueue<>();
+    private BrewingEngine engine;
+
+    @After
+    public void tearDown() {
+        if (engine != null && engine.isRunning()) {
+            engine.stop();
+        }
+    }
+
+    @Test
+    public void expressIsBrewedBeforeStandard() throws Exception {
+        start(10, Duration.ofMillis(100));
+        occupyBarista();
+        engine.submit(task(2L, BrewTask.Lane.STANDARD, "latte"));
+        engine.submit(task(3L, BrewTask.Lane.STANDARD, "mocha"));
+        engine.submit(task(4L, BrewTask.Lane.EXPRESS, "espresso"));
+
+        assertEquals(Collections.singletonList(4L), nextCycle());
+        assertEquals(Collections.singletonList(2L), nextCycle());
+        assertEquals(Collections.singletonList(3L), nextCycle());
+    }
+
+    @Test
+    public void sameSignatureIsCoalesced() throws Exception {
+        start(10, Duration.ofMillis(100));
+        occupyBarista();
+        engine.submit(task(2L, BrewTask.Lane.STANDARD, "latte"));
+        engine.submit(task(3L, BrewTask.Lane.STANDARD, "mocha"));
+        engine.submit(task(4L, BrewTask.Lane.EXPRESS, "latte"));
+        engine.submit(task(5L, BrewTask.Lane.STANDARD, "latte"));
+
+        // 加急的 4 号带走了两个通道里的同款订单
+        assertEquals(Arrays.asList(4L, 2L, 5L), nextCycle());
+        assertEquals(Collections.singletonList(3L), nextCycle());
+    }
+
+    @Test
+    public void submitBlocksWhenCapacityIsExhausted() throws Exception {
+        start(2, Duration.ofMillis(300));
+        occupyBarista();
+        engine.submit(task(2L, BrewTask.Lane.STANDARD, "latte"));
+        engine.submit(task(3L, BrewTask.Lane.STANDARD, "mocha"));
+
+        CompletableFuture<Void> blocked = CompletableFuture.runAsync(() -> {
+            try {
+                engine.submit(task(4L, BrewTask.Lane.STANDARD, "cappuccino"));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        Thread.sleep(100);
+        assertFalse(blocked.isDone());
+
+        // 咖啡师做完第一单取走 2 号后腾出位置
+        assertEquals(Collections.singletonList(2L), nextCycle());
+        blocked.get(1, TimeUnit.SECONDS);
+    }
+
+    private void start(int capacity, Duration brewTime) {
+        BrewingProperties properties = new BrewingProperties();
+        properties.setWorkers(1);
+        properties.setCapacity(capacity);
+        properties.setBrewTime(brewTime);
+        properties.setExtraCupTime(Duration.ZERO);
+
+        CoffeeOrderService orderService = new CoffeeOrderService();
+        ReflectionTestUtils.setField(orderService, "orderRepository", fakeRepository());
+        ReflectionTestUtils.setField(orderService, "deduplicator", passThroughDeduplicator());
+
+        engine = new BrewingEngine();
+        MessageChannel finishedOrders = (message, timeout) -> true;
+        ReflectionTestUtils.setField(engine, "orderService", orderService);
+        ReflectionTestUtils.setField(engine, "finishedOrdersMessageChannel", finishedOrders);
+        ReflectionTestUtils.setField(engine, "properties", properties);
+        ReflectionTestUtils.setField(engine, "baristaPrefix", "test");
+        engine.bindTo(new SimpleMeterRegistry());
+        engine.start();
+    }
+
+    /**
+     * 1 号订单开始制作后咖啡师在 brewTime 内都不会取单，后面提交的订单都留在队列里
+     */
+    private void occupyBarista() throws Exception {
+        engine.submit(task(1L, BrewTask.Lane.STANDARD, "blocker"));
+        assertEquals(Collections.singletonList(1L), nextCycle());
+    }
+
+    private List<Long> nextCycle() throws InterruptedException {
+        List<Long> ids = cycles.poll(2, TimeUnit.SECONDS);
+        if (ids == null) {
+            throw new AssertionError("No brewing cycle started in time.");
+        }
+        return ids;
+    }
+
+    @SuppressWarnings("unchecked")
+    private CoffeeOrderRepository fakeRepository() {
+        CoffeeOrderRepository repository = mock(CoffeeOrderRepository.class);
+        when(repository.updateStates(anyCollection(), anyInt(), anyString(), any())).thenAnswer(invocation -> {
+            Collection<Long> ids = invocation.getArgument(0);
+            if (invocation.<Integer>getArgument(1) == OrderState.BREWING.ordinal()) {
+                cycles.add(new ArrayList<>(ids));
+            }
+            return ids.size();
+        });
+        when(repository.lockInStates(anyCollection(), anyCollection())).thenAnswer(invocation -> {
+            Collection<Long> ids = invocation.getArgument(0);
+            return ids.stream().map(id -> {
+                CoffeeOrder order = new CoffeeOrder();
+                order.setId(id);
+                return order;
+            }).collect(Collectors.toList());
+        });
+        return repository;
+    }
+
+    private MessageDeduplicator passThroughDeduplicator() {
+        MessageDeduplicator deduplicator = mock(MessageDeduplicator.class);
+        when(deduplicator.claim(eq(Waiter.NEW_ORDERS), anyCollection()))
+                .thenAnswer(invocation -> new LinkedHashSet<>(invocation.<Collection<String>>getArgument(1)));
+        return deduplicator;
+    }
+
+    private BrewTask task(Long id, BrewTask.Lane lane, String signature) {
+        OrderEvent event = OrderEvent.builder().version(OrderEvent.VERSION).id(id).state(OrderState.PAID).build();
+        return new BrewTask(event, "order-" + id, lane, signature, success -> { });
+    }
+}
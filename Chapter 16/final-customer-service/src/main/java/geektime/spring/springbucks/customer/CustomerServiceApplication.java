@@ -2,6 +2,7 @@ package geektime.spring.springbucks.customer;
 
 import geektime.spring.springbucks.customer.integration.Waiter;
 import geektime.spring.springbucks.customer.support.CustomConnectionKeepAliveStrategy;
+import geektime.spring.springbucks.customer.support.HedgedRequest;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
@@ -36,6 +37,7 @@ public class CustomerServiceApplication {
                 .setMaxConnPerRoute(20)
                 .disableAutomaticRetries()
                 .setKeepAliveStrategy(new CustomConnectionKeepAliveStrategy())
+                .addInterceptorFirst(HedgedRequest.httpClientInterceptor())
                 .build();
     }
 }
@@ -1,19 +1,10 @@
 package geektime.spring.springbucks.customer.controller;
 
 import geektime.spring.springbucks.customer.integration.CoffeeOrderService;
-import geektime.spring.springbucks.customer.integration.CoffeeService;
+import geektime.spring.springbucks.customer.integration.MenuCache;
 import geektime.spring.springbucks.customer.model.Coffee;
 import geektime.spring.springbucks.customer.model.CoffeeOrder;
 import geektime.spring.springbucks.customer.model.NewOrderRequest;
-import geektime.spring.springbucks.customer.model.OrderState;
-import geektime.spring.springbucks.customer.model.OrderStateRequest;
-import io.github.resilience4j.bulkhead.Bulkhead;
-import io.github.resilience4j.bulkhead.BulkheadFullException;
-import io.github.resilience4j.bulkhead.BulkheadRegistry;
-import io.github.resilience4j.circuitbreaker.CircuitBreaker;
-import io.github.resilience4j.circuitbreaker.CircuitBreakerOpenException;
-import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
-import io.vavr.control.Try;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -23,7 +14,6 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
 
 @RestController
@@ -31,43 +21,27 @@ import java.util.List;
 @Slf4j
 public class CustomerController {
     @Autowired
-    private CoffeeService coffeeService;
+    private MenuCache menuCache;
     @Autowired
     private CoffeeOrderService coffeeOrderService;
     @Value("${customer.name}")
     private String customer;
-    private CircuitBreaker circuitBreaker;
-    private Bulkhead bulkhead;
-
-    public CustomerController(CircuitBreakerRegistry circuitBreakerRegistry,
-                              BulkheadRegistry bulkheadRegistry) {
-        circuitBreaker = circuitBreakerRegistry.circuitBreaker("menu");
-        bulkhead = bulkheadRegistry.bulkhead("menu");
-    }
 
     @GetMapping("/menu")
     public List<Coffee> readMenu() {
-        return Try.ofSupplier(
-                Bulkhead.decorateSupplier(bulkhead,
-                        CircuitBreaker.decorateSupplier(circuitBreaker,
-                                () -> coffeeService.getAll())))
-                .recover(CircuitBreakerOpenException.class, Collections.emptyList())
-                .recover(BulkheadFullException.class, Collections.emptyList())
-                .get();
+        // 熔断与舱壁移到 MenuCache 的加载过程中，读取方不再直接访问 waiter-service
+        return menuCache.getMenu();
     }
 
     @PostMapping("/order")
     @io.github.resilience4j.circuitbreaker.annotation.CircuitBreaker(name = "order")
-    @io.github.resilience4j.bulkhead.annotation.Bulkhead(name = "order")
     public CoffeeOrder createAndPayOrder() {
         NewOrderRequest orderRequest = NewOrderRequest.builder()
                 .customer(customer)
                 .items(Arrays.asList("capuccino"))
                 .build();
-        CoffeeOrder order = coffeeOrderService.create(orderRequest);
-        log.info("Create order: {}", order != null ? order.getId() : "-");
-        order = coffeeOrderService.updateState(order.getId(),
-                OrderStateRequest.builder().state(OrderState.PAID).build());
+        // 一次调用直接创建已支付的订单
+        CoffeeOrder order = coffeeOrderService.createPaid(orderRequest);
         log.info("Order is PAID: {}", order);
         return order;
     }
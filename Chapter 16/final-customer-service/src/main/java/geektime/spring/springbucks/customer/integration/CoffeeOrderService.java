@@ -20,6 +20,10 @@ public interface CoffeeOrderService {
             produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
     CoffeeOrder create(@RequestBody NewOrderRequest newOrder);
 
+    @PostMapping(path = "/order/paid", consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    CoffeeOrder createPaid(@RequestBody NewOrderRequest newOrder);
+
     @PutMapping("/order/{id}")
     CoffeeOrder updateState(@PathVariable("id") Long id,
                             @RequestBody OrderStateRequest orderState);
@@ -0,0 +1,133 @@
+package geektime.spring.springbucks.customer.integration;
+
+import geektime.spring.springbucks.customer.model.Coffee;
+import geektime.spring.springbucks.customer.support.MenuCacheProperties;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerOpenException;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * 客户端菜单缓存
+ * 同一时刻最多只有一个 getAll() 请求在途，并发的读取方共享它的结果；
+ * 菜单过期后先返回旧数据，同时在后台刷新，刷新失败则继续使用旧数据
+ * 这样 waiter-service 收到的菜单请求只和实例数相关，与请求量无关
+ */
+@Component
+@Slf4j
+public class MenuCache {
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+    private final AtomicReference<CompletableFuture<List<Coffee>>> inflight = new AtomicReference<>();
+    private final ExecutorService executor =
+            Executors.newSingleThreadExecutor(new CustomizableThreadFactory("menu-refresh-"));
+    private final Supplier<List<Coffee>> loader;
+    private final MenuCacheProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    public MenuCache(CoffeeService coffeeService,
+                     CircuitBreakerRegistry circuitBreakerRegistry,
+                     MenuCacheProperties properties,
+                     MeterRegistry meterRegistry) {
+        // 并发限制由 ConcurrencyLimitAspect 统一处理
+        this.loader = CircuitBreaker.decorateSupplier(circuitBreakerRegistry.circuitBreaker("menu"),
+                coffeeService::getAll);
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public List<Coffee> getMenu() {
+        Snapshot current = snapshot.get();
+        if (current != null) {
+            if (current.isExpired(properties.getRefreshInterval().toNanos())) {
+                record("stale");
+                refresh();
+            } else {
+                record("hit");
+            }
+            return current.menu;
+        }
+        record("miss");
+        try {
+            return refresh().get(properties.getLoadTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (TimeoutException e) {
+            log.warn("Menu is not loaded in {}.", properties.getLoadTimeout());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (!(cause instanceof CircuitBreakerOpenException || cause instanceof BulkheadFullException)) {
+                log.warn("Failed to load menu: {}", cause.getMessage());
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * 发起刷新；已经有请求在途时直接复用，不再重复请求
+     */
+    private CompletableFuture<List<Coffee>> refresh() {
+        CompletableFuture<List<Coffee>> future = new CompletableFuture<>();
+        while (!inflight.compareAndSet(null, future)) {
+            CompletableFuture<List<Coffee>> existing = inflight.get();
+            if (existing != null) {
+                return existing;
+            }
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    List<Coffee> menu = Collections.unmodifiableList(loader.get());
+                    snapshot.set(new Snapshot(menu, System.nanoTime()));
+                    future.complete(menu);
+                } catch (Throwable t) {
+                    log.debug("Menu refresh failed: {}", t.getMessage());
+                    future.completeExceptionally(t);
+                } finally {
+                    inflight.compareAndSet(future, null);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // 关闭过程中线程池拒绝任务，不清理的话 inflight 会一直指向这个永远不会完成的 future
+            future.completeExceptionally(e);
+            inflight.compareAndSet(future, null);
+        }
+        return future;
+    }
+
+    private void record(String result) {
+        meterRegistry.counter("menu.cache", "result", result).increment();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @AllArgsConstructor
+    private static class Snapshot {
+        private final List<Coffee> menu;
+        private final long loadedAt;
+
+        boolean isExpired(long ttlNanos) {
+            return System.nanoTime() - loadedAt > ttlNanos;
+        }
+    }
+}
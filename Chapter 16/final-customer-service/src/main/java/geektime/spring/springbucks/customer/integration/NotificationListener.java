@@ -1,8 +1,9 @@
 package geektime.spring.springbucks.customer.integration;
 
-import geektime.spring.springbucks.customer.model.CoffeeOrder;
+import geektime.spring.springbucks.customer.model.OrderEvent;
 import geektime.spring.springbucks.customer.model.OrderState;
 import geektime.spring.springbucks.customer.model.OrderStateRequest;
+import geektime.spring.springbucks.customer.support.MessageDeduplicator;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -15,16 +16,25 @@ import org.springframework.stereotype.Component;
 public class NotificationListener {
     @Autowired
     private CoffeeOrderService orderService;
+    @Autowired
+    private MessageDeduplicator deduplicator;
     @Value("${customer.name}")
     private String customer;
 
     @StreamListener(Waiter.NOTIFY_ORDERS)
-    public void takeOrder(@Payload Long id) {
-        CoffeeOrder order = orderService.getOrder(id);
-        if (OrderState.BREWED == order.getState()) {
+    public void takeOrder(@Payload OrderEvent event) {
+        Long id = event.getId();
+        String key = MessageDeduplicator.key(Waiter.NOTIFY_ORDERS, event);
+        if (deduplicator.isDuplicate(Waiter.NOTIFY_ORDERS, key)) {
+            return;
+        }
+        // 新版本消息自带订单状态，旧版本只有 ID 时才回查 waiter-service
+        OrderState state = event.hasState() ? event.getState() : orderService.getOrder(id).getState();
+        if (OrderState.BREWED == state) {
             log.info("Order {} is READY, I'll take it.", id);
             orderService.updateState(id,
                     OrderStateRequest.builder().state(OrderState.TAKEN).build());
+            deduplicator.markProcessed(key);
         } else {
             log.warn("Order {} is NOT READY. Why are you notify me?", id);
         }
@@ -0,0 +1,73 @@
+package geektime.spring.springbucks.customer.support;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AIMD 并发限制：
+ * 调用成功且并发接近上限时上限加一，出错或耗时超过阈值时上限按比例缩小
+ * 达到上限后最多等待 maxWaitMillis，仍拿不到名额则拒绝
+ */
+@Slf4j
+public class AdaptiveConcurrencyLimiter {
+    private final String name;
+    private final ConcurrencyLimitProperties properties;
+    private final long maxWaitMillis;
+    private final Counter rejected;
+    private double limit;
+    private int inflight;
+
+    public AdaptiveConcurrencyLimiter(String name, int initialLimit, long maxWaitMillis,
+                                      ConcurrencyLimitProperties properties, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.properties = properties;
+        this.maxWaitMillis = maxWaitMillis;
+        this.limit = Math.max(properties.getMinLimit(), Math.min(initialLimit, properties.getMaxLimit()));
+        meterRegistry.gauge("concurrency.limit", Tags.of("backend", name),
+                this, AdaptiveConcurrencyLimiter::getLimit);
+        meterRegistry.gauge("concurrency.inflight", Tags.of("backend", name),
+                this, AdaptiveConcurrencyLimiter::getInflight);
+        this.rejected = meterRegistry.counter("concurrency.rejected", "backend", name);
+    }
+
+    public synchronized boolean tryAcquire() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        while (inflight >= getLimit()) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                rejected.increment();
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        inflight++;
+        return true;
+    }
+
+    /**
+     * 调用结束后归还名额，并根据结果调整上限
+     */
+    public synchronized void release(long elapsedNanos, boolean dropped) {
+        int current = inflight--;
+        if (dropped || elapsedNanos > properties.getLatencyThreshold().toNanos()) {
+            limit = Math.max(properties.getMinLimit(), limit * properties.getBackoffRatio());
+            log.debug("Decrease {} concurrency limit to {}.", name, getLimit());
+        } else if (current * 2 >= limit) {
+            // 只有真正用到了一半以上的名额才放大，避免空闲时上限无限增长
+            limit = Math.min(properties.getMaxLimit(), limit + 1);
+        }
+        notifyAll();
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInflight() {
+        return inflight;
+    }
+}
@@ -0,0 +1,91 @@
+package geektime.spring.springbucks.customer.support;
+
+import feign.FeignException;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 为访问 waiter-service 的 Feign 调用加上并发限制
+ * CoffeeOrderService 使用 order 的配置，CoffeeService 使用 menu 的配置，
+ * 初始上限和等待时间取自对应的 resilience4j.bulkhead 配置，
+ * concurrency-limit.enabled=false 时直接使用原来的静态 Bulkhead
+ */
+@Aspect
+@Component
+@Slf4j
+public class ConcurrencyLimitAspect {
+    private final Map<String, AdaptiveConcurrencyLimiter> limiters = new ConcurrentHashMap<>();
+    private final BulkheadRegistry bulkheadRegistry;
+    private final ConcurrencyLimitProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    public ConcurrencyLimitAspect(BulkheadRegistry bulkheadRegistry,
+                                  ConcurrencyLimitProperties properties,
+                                  MeterRegistry meterRegistry) {
+        this.bulkheadRegistry = bulkheadRegistry;
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Around("execution(* geektime.spring.springbucks.customer.integration.CoffeeOrderService.*(..))")
+    public Object limitOrder(ProceedingJoinPoint pjp) throws Throwable {
+        return limit("order", pjp);
+    }
+
+    @Around("execution(* geektime.spring.springbucks.customer.integration.CoffeeService.*(..))")
+    public Object limitMenu(ProceedingJoinPoint pjp) throws Throwable {
+        return limit("menu", pjp);
+    }
+
+    private Object limit(String backend, ProceedingJoinPoint pjp) throws Throwable {
+        Bulkhead bulkhead = bulkheadRegistry.bulkhead(backend);
+        if (!properties.isEnabled()) {
+            return Bulkhead.decorateCheckedSupplier(bulkhead, pjp::proceed).apply();
+        }
+        AdaptiveConcurrencyLimiter limiter = limiters.computeIfAbsent(backend, name -> {
+            BulkheadConfig config = bulkhead.getBulkheadConfig();
+            return new AdaptiveConcurrencyLimiter(name, config.getMaxConcurrentCalls(),
+                    config.getMaxWaitTime(), properties, meterRegistry);
+        });
+        if (!limiter.tryAcquire()) {
+            throw new BulkheadFullException("Concurrency limit of " + backend
+                    + " is full: " + limiter.getLimit());
+        }
+        long start = System.nanoTime();
+        boolean dropped = false;
+        try {
+            return pjp.proceed();
+        } catch (Throwable t) {
+            dropped = isOverload(t);
+            throw t;
+        } finally {
+            limiter.release(System.nanoTime() - start, dropped);
+        }
+    }
+
+    /**
+     * 超时、连接失败和 5xx 说明服务端压力过大，4xx 是请求本身的问题，不影响上限
+     */
+    private boolean isOverload(Throwable t) {
+        if (HedgedRequest.isCurrentAborted()) {
+            // 对冲中另一路先返回，这一路是被主动中止的
+            return false;
+        }
+        if (t instanceof FeignException) {
+            int status = ((FeignException) t).status();
+            return status < 0 || status >= 500;
+        }
+        return true;
+    }
+}
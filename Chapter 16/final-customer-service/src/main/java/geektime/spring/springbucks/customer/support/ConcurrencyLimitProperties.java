@@ -0,0 +1,27 @@
+package geektime.spring.springbucks.customer.support;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@ConfigurationProperties("concurrency-limit")
+@Data
+@Component
+public class ConcurrencyLimitProperties {
+    /**
+     * 关闭后按 resilience4j.bulkhead 的静态配置限流
+     */
+    private boolean enabled = true;
+    private int minLimit = 1;
+    private int maxLimit = 200;
+    /**
+     * 出错或超过延迟阈值时，并发上限乘以这个比例
+     */
+    private double backoffRatio = 0.9;
+    /**
+     * 调用耗时超过阈值视为过载
+     */
+    private Duration latencyThreshold = Duration.ofMillis(300);
+}
@@ -0,0 +1,119 @@
+package geektime.spring.springbucks.customer.support;
+
+import okhttp3.Interceptor;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.client.methods.HttpRequestWrapper;
+import org.apache.http.client.methods.HttpUriRequest;
+
+/**
+ * 对冲中的一路请求，记录它在当前线程上发起的 HTTP 调用
+ * 另一路先返回时调用 abort() 中止底层连接，释放连接和并发名额，而不是等到读超时
+ * Apache HttpClient 与 OkHttp 都通过拦截器登记中止方法，Ribbon 重试发起的新请求会被立即中止
+ * 拦截器同时记下请求实际发往的实例，备份请求据此让 HedgingAwareRule 避开主请求所在的实例
+ */
+public class HedgedRequest {
+    private static final ThreadLocal<HedgedRequest> CURRENT = new ThreadLocal<>();
+
+    private Runnable abortAction;
+    private boolean aborted = false;
+    private volatile String server;
+    private String excludedServer;
+
+    public interface Call {
+        Object call() throws Throwable;
+    }
+
+    public Object run(Call call) throws Throwable {
+        CURRENT.set(this);
+        try {
+            return call.call();
+        } finally {
+            CURRENT.remove();
+        }
+    }
+
+    public synchronized void abort() {
+        aborted = true;
+        if (abortAction != null) {
+            abortAction.run();
+            abortAction = null;
+        }
+    }
+
+    public synchronized boolean isAborted() {
+        return aborted;
+    }
+
+    /**
+     * 最近一次 HTTP 调用发往的实例，格式为 host:port，还没有发出时为 null
+     */
+    public String getServer() {
+        return server;
+    }
+
+    /**
+     * 在 run() 之前调用，这一路请求由负载均衡选择实例时跳过 server
+     */
+    public void exclude(String server) {
+        this.excludedServer = server;
+    }
+
+    private synchronized void register(Runnable action) {
+        if (aborted) {
+            action.run();
+        } else {
+            abortAction = action;
+        }
+    }
+
+    /**
+     * 当前线程上的请求是否因为另一路先返回而被中止，被中止的请求不应算作服务端的错误
+     */
+    public static boolean isCurrentAborted() {
+        HedgedRequest request = CURRENT.get();
+        return request != null && request.isAborted();
+    }
+
+    /**
+     * 当前线程上的请求需要避开的实例，不在对冲中或没有需要避开的实例时为 null
+     */
+    public static String currentExcludedServer() {
+        HedgedRequest request = CURRENT.get();
+        return request == null ? null : request.excludedServer;
+    }
+
+    public static void onAbort(Runnable action) {
+        HedgedRequest request = CURRENT.get();
+        if (request != null) {
+            request.register(action);
+        }
+    }
+
+    static void onSend(String host, int port) {
+        HedgedRequest request = CURRENT.get();
+        if (request != null) {
+            request.server = host + ":" + port;
+        }
+    }
+
+    public static HttpRequestInterceptor httpClientInterceptor() {
+        return (request, context) -> {
+            HttpRequest original = request instanceof HttpRequestWrapper ?
+                    ((HttpRequestWrapper) request).getOriginal() : request;
+            if (original instanceof HttpUriRequest) {
+                HttpUriRequest uriRequest = (HttpUriRequest) original;
+                onSend(uriRequest.getURI().getHost(), uriRequest.getURI().getPort());
+                onAbort(uriRequest::abort);
+            }
+        };
+    }
+
+    public static Interceptor okHttpInterceptor() {
+        return chain -> {
+            onSend(chain.request().url().host(), chain.request().url().port());
+            onAbort(chain.call()::cancel);
+            return chain.proceed(chain.request());
+        };
+    }
+}
@@ -0,0 +1,183 @@
+package geektime.spring.springbucks.customer.support;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import lombok.extern.slf4j.Slf4j;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 幂等读请求的对冲：
+ * 主请求直接在调用线程上执行，超过历史延迟的分位值仍未返回时，
+ * 才由 hedgingScheduler 的线程再发一个备份请求，由 HedgingAwareRule 选择主请求以外的实例
+ * 先成功返回的结果生效，另一路通过 HedgedRequest 中止底层 HTTP 请求；
+ * 主请求失败时等待已发出的备份请求，两路都失败则抛出主请求的异常
+ * 备份请求受令牌桶限制，同时在途的备份请求也不超过 maxTokens，整个集群都变慢时不会成倍放大请求量
+ * 排在 ConcurrencyLimitAspect 之前，每个请求各自占用并发名额
+ */
+@Aspect
+@Component
+@Order(0)
+@Slf4j
+public class HedgingAspect {
+    private static final long DELAY_REFRESH_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final ScheduledExecutorService scheduler;
+    private final HedgingProperties properties;
+    private final Timer latency;
+    private final Counter hedged;
+    private final Counter hedgeWon;
+    private final Counter budgetExhausted;
+    private double tokens;
+    private int inflightBackups = 0;
+    private volatile long delayNanos;
+    private volatile long delayUpdatedAt;
+
+    /**
+     * scheduler 延迟注入，保证拿到的是经过 Sleuth 包装、会传递 Trace 上下文的实例
+     */
+    public HedgingAspect(HedgingProperties properties, MeterRegistry meterRegistry,
+                         @Lazy @Qualifier(HedgingConfig.HEDGING_SCHEDULER) ScheduledExecutorService scheduler) {
+        this.properties = properties;
+        this.scheduler = scheduler;
+        this.latency = Timer.builder("hedging.read.latency")
+                .publishPercentiles(properties.getPercentile())
+                .register(meterRegistry);
+        this.hedged = meterRegistry.counter("hedging.requests", "result", "sent");
+        this.hedgeWon = meterRegistry.counter("hedging.requests", "result", "won");
+        this.budgetExhausted = meterRegistry.counter("hedging.requests", "result", "no-budget");
+        this.tokens = properties.getMaxTokens();
+        this.delayNanos = properties.getDefaultDelay().toNanos();
+    }
+
+    @Around("execution(* geektime.spring.springbucks.customer.integration.CoffeeService.get*(..)) || "
+            + "execution(* geektime.spring.springbucks.customer.integration.CoffeeOrderService.getOrder(..))")
+    public Object hedge(ProceedingJoinPoint pjp) throws Throwable {
+        if (!properties.isEnabled()) {
+            return pjp.proceed();
+        }
+        deposit();
+        HedgedRequest primary = new HedgedRequest();
+        HedgedRequest backup = new HedgedRequest();
+        CompletableFuture<Object> backupResult = new CompletableFuture<>();
+        // 主请求结束与备份请求发出只能有一个先发生
+        AtomicBoolean decided = new AtomicBoolean(false);
+        Runnable sendBackup = () -> {
+            if (decided.get()) {
+                return;
+            }
+            if (!withdraw()) {
+                budgetExhausted.increment();
+                return;
+            }
+            if (!decided.compareAndSet(false, true)) {
+                refund();
+                return;
+            }
+            hedged.increment();
+            backup.exclude(primary.getServer());
+            try {
+                backupResult.complete(backup.run(() -> call(pjp)));
+                primary.abort();
+            } catch (Throwable t) {
+                backupResult.completeExceptionally(t);
+            } finally {
+                releaseBackup();
+            }
+        };
+        ScheduledFuture<?> timer;
+        try {
+            timer = scheduler.schedule(sendBackup, delay(), TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            // 应用关闭过程中不再对冲
+            return pjp.proceed();
+        }
+
+        Object result;
+        try {
+            result = primary.run(() -> call(pjp));
+        } catch (Throwable t) {
+            timer.cancel(false);
+            if (decided.compareAndSet(false, true)) {
+                throw t;
+            }
+            try {
+                Object value = backupResult.get();
+                hedgeWon.increment();
+                return value;
+            } catch (ExecutionException e) {
+                throw t;
+            }
+        }
+        timer.cancel(false);
+        if (!decided.compareAndSet(false, true)) {
+            backup.abort();
+        }
+        return result;
+    }
+
+    private Object call(ProceedingJoinPoint pjp) throws Throwable {
+        long start = System.nanoTime();
+        Object result = pjp.proceed();
+        latency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return result;
+    }
+
+    /**
+     * 分位值每秒最多计算一次
+     */
+    private long delay() {
+        long now = System.nanoTime();
+        if (now - delayUpdatedAt > DELAY_REFRESH_NANOS) {
+            delayUpdatedAt = now;
+            long delay = properties.getDefaultDelay().toNanos();
+            if (latency.count() >= properties.getMinSamples()) {
+                for (ValueAtPercentile value : latency.takeSnapshot().percentileValues()) {
+                    delay = (long) value.value(TimeUnit.NANOSECONDS);
+                }
+            }
+            delayNanos = Math.max(delay, properties.getMinDelay().toNanos());
+        }
+        return delayNanos;
+    }
+
+    private synchronized void deposit() {
+        tokens = Math.min(properties.getMaxTokens(), tokens + properties.getBudgetRatio());
+    }
+
+    /**
+     * 备份请求既要消耗令牌，也要占用一个在途名额，名额在备份请求结束后才归还
+     */
+    private synchronized boolean withdraw() {
+        if (tokens >= 1 && inflightBackups < properties.getMaxTokens()) {
+            tokens -= 1;
+            inflightBackups++;
+            return true;
+        }
+        return false;
+    }
+
+    private synchronized void refund() {
+        tokens = Math.min(properties.getMaxTokens(), tokens + 1);
+        inflightBackups--;
+    }
+
+    private synchronized void releaseBackup() {
+        inflightBackups--;
+    }
+}
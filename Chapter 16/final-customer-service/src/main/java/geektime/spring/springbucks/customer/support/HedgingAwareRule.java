@@ -0,0 +1,28 @@
+package geektime.spring.springbucks.customer.support;
+
+import com.netflix.loadbalancer.Server;
+import com.netflix.loadbalancer.ZoneAvoidanceRule;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * 在默认的 ZoneAvoidanceRule 基础上，让对冲的备份请求避开主请求所在的实例，
+ * 否则备份请求有可能落到同一个慢实例上，对冲就失去了意义
+ * 只剩这一个可用实例时仍然选择它
+ * 通过 <服务名>.ribbon.NFLoadBalancerRuleClassName 启用
+ */
+public class HedgingAwareRule extends ZoneAvoidanceRule {
+    @Override
+    public Server choose(Object key) {
+        Server server = super.choose(key);
+        String excluded = HedgedRequest.currentExcludedServer();
+        if (server == null || excluded == null || !excluded.equals(server.getHostPort())) {
+            return server;
+        }
+        List<Server> others = getLoadBalancer().getAllServers().stream()
+                .filter(s -> !excluded.equals(s.getHostPort()))
+                .collect(Collectors.toList());
+        return getPredicate().chooseRoundRobinAfterFiltering(others, key).or(server);
+    }
+}
@@ -0,0 +1,25 @@
+package geektime.spring.springbucks.customer.support;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+@Configuration
+public class HedgingConfig {
+    public static final String HEDGING_SCHEDULER = "hedgingScheduler";
+
+    /**
+     * 只有触发对冲时才占用线程，线程数固定为 hedging.pool-size，取消的定时任务立即移出队列
+     * 声明为 Bean 后 Sleuth 会把它包装成 TraceableScheduledExecutorService，备份请求沿用主请求的 Trace
+     */
+    @Bean(name = HEDGING_SCHEDULER, destroyMethod = "shutdownNow")
+    public ScheduledExecutorService hedgingScheduler(HedgingProperties properties) {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(properties.getPoolSize(),
+                new CustomizableThreadFactory("hedging-"));
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+}
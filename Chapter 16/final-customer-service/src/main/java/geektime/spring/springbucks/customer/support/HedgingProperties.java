@@ -0,0 +1,36 @@
+package geektime.spring.springbucks.customer.support;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@ConfigurationProperties("hedging")
+@Data
+@Component
+public class HedgingProperties {
+    private boolean enabled = false;
+    /**
+     * 等待到历史延迟的这个分位值仍未返回时，发出备份请求
+     */
+    private double percentile = 0.95;
+    private Duration minDelay = Duration.ofMillis(10);
+    /**
+     * 样本不足 minSamples 时使用的等待时间
+     */
+    private Duration defaultDelay = Duration.ofMillis(100);
+    private int minSamples = 100;
+    /**
+     * 每个请求存入的令牌数，即备份请求最多占请求总数的比例
+     */
+    private double budgetRatio = 0.1;
+    /**
+     * 令牌桶容量，限制突发的备份请求数量
+     */
+    private int maxTokens = 10;
+    /**
+     * 执行备份请求的线程数，线程都在忙时到期的备份请求会推迟，主请求先返回则不再发出
+     */
+    private int poolSize = 10;
+}
@@ -0,0 +1,94 @@
+package geektime.spring.springbucks.customer.support;
+
+import feign.Client;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.web.client.RestTemplateCustomizer;
+import org.springframework.cloud.netflix.ribbon.SpringClientFactory;
+import org.springframework.cloud.openfeign.ribbon.CachingSpringLoadBalancerFactory;
+import org.springframework.cloud.openfeign.ribbon.LoadBalancerFeignClient;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.OkHttp3ClientHttpRequestFactory;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+import java.io.InputStream;
+import java.security.KeyStore;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * customer.http.transport 为 h2c 或 h2 时，Feign 和 RestTemplate 改用 OkHttp 的 HTTP/2，
+ * 并发请求在少量连接上多路复用；默认仍使用 Apache HttpClient 连接池
+ * h2c 需要服务端开启 server.h2c.enabled，h2 需要同时设置 waiter-service.ribbon.IsSecure=true
+ */
+@Configuration
+@ConditionalOnExpression("!'${customer.http.transport:http1}'.equalsIgnoreCase('http1')")
+@Slf4j
+public class HttpTransportConfig {
+
+    @Bean
+    public OkHttpClient okHttpClient(HttpTransportProperties properties, MeterRegistry meterRegistry)
+            throws Exception {
+        OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(properties.getMaxIdleConnections(), 5, TimeUnit.MINUTES))
+                .retryOnConnectionFailure(false)
+                .addInterceptor(HedgedRequest.okHttpInterceptor());
+        if (properties.getTransport() == HttpTransportProperties.Transport.H2C) {
+            builder.protocols(Collections.singletonList(Protocol.H2_PRIOR_KNOWLEDGE));
+        } else {
+            builder.protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1));
+            if (properties.getTrustStore() != null) {
+                X509TrustManager trustManager = trustManager(properties);
+                SSLContext sslContext = SSLContext.getInstance("TLS");
+                sslContext.init(null, new X509TrustManager[] { trustManager }, null);
+                builder.sslSocketFactory(sslContext.getSocketFactory(), trustManager);
+            }
+        }
+        OkHttpClient client = builder.build();
+        meterRegistry.gauge("http.client.connections",
+                Tags.of("transport", properties.getTransport().name().toLowerCase()),
+                client, c -> c.connectionPool().connectionCount());
+        log.info("Use {} transport for Feign and RestTemplate.", properties.getTransport());
+        return client;
+    }
+
+    /**
+     * 替换 Feign 默认的 Apache HttpClient，仍然经过 Ribbon 负载均衡
+     */
+    @Bean
+    public Client feignClient(CachingSpringLoadBalancerFactory cachingFactory,
+                              SpringClientFactory clientFactory,
+                              OkHttpClient okHttpClient) {
+        return new LoadBalancerFeignClient(new feign.okhttp.OkHttpClient(okHttpClient),
+                cachingFactory, clientFactory);
+    }
+
+    /**
+     * 通过 RestTemplateBuilder 创建的 RestTemplate（包括 @LoadBalanced 的）都使用同一个 OkHttpClient
+     */
+    @Bean
+    public RestTemplateCustomizer okHttpRestTemplateCustomizer(OkHttpClient okHttpClient) {
+        return restTemplate -> restTemplate.setRequestFactory(new OkHttp3ClientHttpRequestFactory(okHttpClient));
+    }
+
+    private X509TrustManager trustManager(HttpTransportProperties properties) throws Exception {
+        KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+        try (InputStream in = properties.getTrustStore().getInputStream()) {
+            char[] password = properties.getTrustStorePassword() == null ?
+                    null : properties.getTrustStorePassword().toCharArray();
+            keyStore.load(in, password);
+        }
+        TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        tmf.init(keyStore);
+        return (X509TrustManager) tmf.getTrustManagers()[0];
+    }
+}
@@ -0,0 +1,37 @@
+package geektime.spring.springbucks.customer.support;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+@ConfigurationProperties("customer.http")
+@Data
+@Component
+public class HttpTransportProperties {
+    private Transport transport = Transport.HTTP1;
+    /**
+     * HTTP/2 下每个目标通常只需要一个连接，这里只限制空闲连接数
+     */
+    private int maxIdleConnections = 5;
+    /**
+     * transport=h2 时用于校验服务端证书，不配置则使用 JDK 默认的信任库
+     */
+    private Resource trustStore;
+    private String trustStorePassword;
+
+    public enum Transport {
+        /**
+         * Apache HttpClient 连接池，HTTP/1.1
+         */
+        HTTP1,
+        /**
+         * OkHttp，明文 HTTP/2（Prior Knowledge），用于集群内部
+         */
+        H2C,
+        /**
+         * OkHttp，基于 TLS 的 HTTP/2，ALPN 协商失败时回退到 HTTP/1.1
+         */
+        H2
+    }
+}
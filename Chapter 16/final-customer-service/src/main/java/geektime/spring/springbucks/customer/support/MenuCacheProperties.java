@@ -0,0 +1,21 @@
+package geektime.spring.springbucks.customer.support;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@ConfigurationProperties("menu.cache")
+@Data
+@Component
+public class MenuCacheProperties {
+    /**
+     * 菜单超过这个时间后视为过期，下次读取时在后台刷新
+     */
+    private Duration refreshInterval = Duration.ofSeconds(30);
+    /**
+     * 没有缓存时，读取方等待首次加载的最长时间
+     */
+    private Duration loadTimeout = Duration.ofSeconds(2);
+}
@@ -0,0 +1,51 @@
+package geektime.spring.springbucks.customer.support;
+
+import geektime.spring.springbucks.customer.model.OrderEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 幂等消费：customer-service 没有数据库，只在内存 LRU 中记录最近处理过的消息
+ * Key 为 Binding:订单ID:订单状态
+ */
+@Component
+@Slf4j
+public class MessageDeduplicator {
+    private final Map<String, Boolean> recent;
+    private final MeterRegistry meterRegistry;
+
+    public MessageDeduplicator(@Value("${dedupe.maximum-size:10000}") int maximumSize,
+                               MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.recent = Collections.synchronizedMap(new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > maximumSize;
+            }
+        });
+    }
+
+    public static String key(String binding, OrderEvent event) {
+        return binding + ":" + event.getId() + ":" + (event.getState() == null ? "" : event.getState());
+    }
+
+    public boolean isDuplicate(String binding, String key) {
+        boolean duplicate = recent.containsKey(key);
+        meterRegistry.counter("message.dedupe", "binding", binding,
+                "result", duplicate ? "memory" : "miss").increment();
+        if (duplicate) {
+            log.info("Drop duplicated message {}.", key);
+        }
+        return duplicate;
+    }
+
+    public void markProcessed(String key) {
+        recent.put(key, Boolean.TRUE);
+    }
+}
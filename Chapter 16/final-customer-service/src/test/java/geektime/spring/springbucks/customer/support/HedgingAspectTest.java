@@ -0,0 +1,213 @@
+package geektime.spring.springbucks.customer.support;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 第一次 proceed() 视为主请求（在调用线程上执行），第二次视为备份请求
+ * 模拟的请求在被中止时抛出 IOException，和 HttpClient / OkHttp 被中止时的行为一致
+ */
+public class HedgingAspectTest {
+    private static final long DELAY_MILLIS = 50;
+
+    private HedgingProperties properties;
+    private MeterRegistry meterRegistry;
+    private ScheduledExecutorService scheduler;
+    private ProceedingJoinPoint pjp;
+    private final AtomicInteger calls = new AtomicInteger();
+    private final CountDownLatch primaryAborted = new CountDownLatch(1);
+    private final CountDownLatch backupAborted = new CountDownLatch(1);
+
+    @Before
+    public void setUp() {
+        properties = new HedgingProperties();
+        properties.setEnabled(true);
+        properties.setDefaultDelay(Duration.ofMillis(DELAY_MILLIS));
+        properties.setMinSamples(Integer.MAX_VALUE);
+        properties.setPoolSize(2);
+        meterRegistry = new SimpleMeterRegistry();
+        scheduler = new HedgingConfig().hedgingScheduler(properties);
+        pjp = mock(ProceedingJoinPoint.class);
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void primaryReturnsBeforeDelayOnCallerThread() throws Throwable {
+        Thread caller = Thread.currentThread();
+        when(pjp.proceed()).thenAnswer(invocation -> {
+            calls.incrementAndGet();
+            assertTrue(Thread.currentThread() == caller);
+            return "primary";
+        });
+
+        assertEquals("primary", aspect().hedge(pjp));
+        Thread.sleep(DELAY_MILLIS * 2);
+        assertEquals(1, calls.get());
+        assertEquals(0, count("sent"), 0);
+    }
+
+    @Test
+    public void backupWinsAndAbortsPrimary() throws Throwable {
+        when(pjp.proceed()).thenAnswer(invocation -> calls.incrementAndGet() == 1 ?
+                request(primaryAborted, 5000, "primary") : request(backupAborted, 10, "backup"));
+
+        long start = System.nanoTime();
+        assertEquals("backup", aspect().hedge(pjp));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+        assertEquals(0, primaryAborted.getCount());
+        assertEquals(1, count("sent"), 0);
+        assertEquals(1, count("won"), 0);
+    }
+
+    @Test
+    public void primaryWinsAndAbortsBackup() throws Throwable {
+        when(pjp.proceed()).thenAnswer(invocation -> calls.incrementAndGet() == 1 ?
+                request(primaryAborted, DELAY_MILLIS * 3, "primary") : request(backupAborted, 5000, "backup"));
+
+        assertEquals("primary", aspect().hedge(pjp));
+        assertTrue(backupAborted.await(1, TimeUnit.SECONDS));
+        assertEquals(1, count("sent"), 0);
+        assertEquals(0, count("won"), 0);
+    }
+
+    @Test
+    public void backupExcludesPrimaryServer() throws Throwable {
+        AtomicReference<String> excluded = new AtomicReference<>();
+        when(pjp.proceed()).thenAnswer(invocation -> {
+            if (calls.incrementAndGet() == 1) {
+                HedgedRequest.onSend("waiter-1", 8080);
+                assertNull(HedgedRequest.currentExcludedServer());
+                return request(primaryAborted, 5000, "primary");
+            }
+            excluded.set(HedgedRequest.currentExcludedServer());
+            return "backup";
+        });
+
+        assertEquals("backup", aspect().hedge(pjp));
+        assertEquals("waiter-1:8080", excluded.get());
+    }
+
+    @Test
+    public void primaryFailureFallsThroughToBackup() throws Throwable {
+        when(pjp.proceed()).thenAnswer(invocation -> {
+            if (calls.incrementAndGet() == 1) {
+                Thread.sleep(DELAY_MILLIS * 2);
+                throw new IOException("primary failed");
+            }
+            return request(backupAborted, DELAY_MILLIS * 4, "backup");
+        });
+
+        assertEquals("backup", aspect().hedge(pjp));
+        assertEquals(1, count("won"), 0);
+    }
+
+    @Test
+    public void bothFailedThrowsPrimaryFailure() throws Throwable {
+        when(pjp.proceed()).thenAnswer(invocation -> {
+            int n = calls.incrementAndGet();
+            Thread.sleep(DELAY_MILLIS * 2);
+            throw new IOException(n == 1 ? "primary failed" : "backup failed");
+        });
+
+        try {
+            aspect().hedge(pjp);
+            fail();
+        } catch (IOException e) {
+            assertEquals("primary failed", e.getMessage());
+        }
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void primaryFailureBeforeDelayIsNotHedged() throws Throwable {
+        when(pjp.proceed()).thenAnswer(invocation -> {
+            calls.incrementAndGet();
+            throw new IOException("primary failed");
+        });
+
+        try {
+            aspect().hedge(pjp);
+            fail();
+        } catch (IOException e) {
+            assertEquals("primary failed", e.getMessage());
+        }
+        Thread.sleep(DELAY_MILLIS * 2);
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void noBackupWithoutBudget() throws Throwable {
+        properties.setMaxTokens(0);
+        when(pjp.proceed()).thenAnswer(invocation -> {
+            calls.incrementAndGet();
+            Thread.sleep(DELAY_MILLIS * 2);
+            return "primary";
+        });
+
+        assertEquals("primary", aspect().hedge(pjp));
+        assertEquals(1, calls.get());
+        assertEquals(0, count("sent"), 0);
+        assertEquals(1, count("no-budget"), 0);
+    }
+
+    @Test
+    public void backupsAreLimitedByBudget() throws Throwable {
+        properties.setMaxTokens(2);
+        properties.setBudgetRatio(0);
+        HedgingAspect aspect = aspect();
+        when(pjp.proceed()).thenAnswer(invocation -> {
+            Thread.sleep(DELAY_MILLIS * 2);
+            return "primary";
+        });
+
+        for (int i = 0; i < 5; i++) {
+            aspect.hedge(pjp);
+        }
+        assertEquals(2, count("sent"), 0);
+        assertEquals(3, count("no-budget"), 0);
+    }
+
+    private HedgingAspect aspect() {
+        return new HedgingAspect(properties, meterRegistry, scheduler);
+    }
+
+    private double count(String result) {
+        return meterRegistry.counter("hedging.requests", "result", result).count();
+    }
+
+    private static Object request(CountDownLatch aborted, long millis, String result) throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        // 先记录中止再唤醒请求线程，否则调用方可能在 aborted 计数之前就返回并检查
+        HedgedRequest.onAbort(() -> {
+            aborted.countDown();
+            latch.countDown();
+        });
+        if (latch.await(millis, TimeUnit.MILLISECONDS)) {
+            throw new IOException("Canceled");
+        }
+        return result;
+    }
+}
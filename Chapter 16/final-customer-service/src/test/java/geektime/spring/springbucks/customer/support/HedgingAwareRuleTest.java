@@ -0,0 +1,56 @@
+package geektime.spring.springbucks.customer.support;
+
+import com.netflix.loadbalancer.ILoadBalancer;
+import com.netflix.loadbalancer.Server;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 不在对冲中的请求照常轮询；备份请求跳过主请求所在的实例，只剩这一个实例时仍然选择它
+ * ILoadBalancer 用 Mock 代替，没有 LoadBalancerStats 时区域与熔断过滤都会放行
+ */
+public class HedgingAwareRuleTest {
+    private final Server a = new Server("waiter-1", 8080);
+    private final Server b = new Server("waiter-2", 8080);
+    private ILoadBalancer lb;
+    private HedgingAwareRule rule;
+
+    @Before
+    public void setUp() {
+        lb = mock(ILoadBalancer.class);
+        when(lb.getAllServers()).thenReturn(Arrays.asList(a, b));
+        rule = new HedgingAwareRule();
+        rule.setLoadBalancer(lb);
+    }
+
+    @Test
+    public void roundRobinWithoutHedging() {
+        Server first = rule.choose(null);
+        assertNotEquals(first, rule.choose(null));
+    }
+
+    @Test
+    public void backupSkipsPrimaryServer() throws Throwable {
+        for (Server primary : Arrays.asList(a, b, a, b)) {
+            HedgedRequest backup = new HedgedRequest();
+            backup.exclude(primary.getHostPort());
+            assertNotEquals(primary, backup.run(() -> rule.choose(null)));
+        }
+    }
+
+    @Test
+    public void onlyServerIsStillChosen() throws Throwable {
+        when(lb.getAllServers()).thenReturn(Collections.singletonList(a));
+        HedgedRequest backup = new HedgedRequest();
+        backup.exclude(a.getHostPort());
+        assertEquals(a, backup.run(() -> rule.choose(null)));
+    }
+}
@@ -0,0 +1,189 @@
+package geektime.spring.springbucks.customer.support;
+
+import feign.Client;
+import feign.Request;
+import feign.Response;
+import feign.Util;
+import feign.httpclient.ApacheHttpClient;
+import geektime.spring.springbucks.customer.CustomerServiceApplication;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.OkHttpClient;
+import org.apache.catalina.Context;
+import org.apache.catalina.connector.Connector;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.coyote.http2.Http2Protocol;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.junit.AfterClass;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.cloud.netflix.ribbon.SpringClientFactory;
+import org.springframework.cloud.openfeign.ribbon.CachingSpringLoadBalancerFactory;
+import org.springframework.cloud.openfeign.ribbon.LoadBalancerFeignClient;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * 对比 HTTP/1.1 连接池（与生产配置相同，每个路由 20 个连接）和 h2c 多路复用
+ * 两种客户端都由生产代码创建，请求经过 Feign 实际使用的 Client 发出
+ * 服务端是开启了 h2c 的嵌入式 Tomcat，按客户端端口统计实际使用的连接数
+ * 默认跳过：mvn test -Dtest=HttpTransportBenchmarkTest -Dhttp.benchmark=true
+ */
+@Slf4j
+public class HttpTransportBenchmarkTest {
+    private static final int CLIENTS = Integer.getInteger("http.benchmark.clients", 64);
+    private static final int REQUESTS_PER_CLIENT = Integer.getInteger("http.benchmark.requests", 200);
+    // 模拟 waiter-service 的处理耗时
+    private static final long SERVICE_MILLIS = 5;
+
+    private static final Set<Integer> remotePorts = ConcurrentHashMap.newKeySet();
+    private static Tomcat tomcat;
+    private static String url;
+
+    @BeforeClass
+    public static void startServer() throws Exception {
+        Assume.assumeTrue(Boolean.getBoolean("http.benchmark"));
+        tomcat = new Tomcat();
+        tomcat.setBaseDir(Files.createTempDirectory("h2c-benchmark").toString());
+        Connector connector = new Connector();
+        connector.setPort(0);
+        Http2Protocol http2Protocol = new Http2Protocol();
+        http2Protocol.setMaxConcurrentStreams(CLIENTS * 2);
+        http2Protocol.setMaxConcurrentStreamExecution(CLIENTS * 2);
+        connector.addUpgradeProtocol(http2Protocol);
+        tomcat.setConnector(connector);
+
+        Context context = tomcat.addContext("", null);
+        Tomcat.addServlet(context, "coffee", new HttpServlet() {
+            @Override
+            protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+                remotePorts.add(req.getRemotePort());
+                try {
+                    Thread.sleep(SERVICE_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                resp.setContentType("application/json");
+                resp.getWriter().write("[{\"id\":1,\"name\":\"espresso\"}]");
+            }
+        });
+        context.addServletMappingDecoded("/*", "coffee");
+        tomcat.start();
+        url = "http://localhost:" + connector.getLocalPort() + "/coffee/";
+    }
+
+    @AfterClass
+    public static void stopServer() throws Exception {
+        if (tomcat != null) {
+            tomcat.stop();
+            tomcat.destroy();
+        }
+    }
+
+    @Test
+    public void compareTransports() throws Exception {
+        // 与生产代码使用同一套配置：Apache HttpClient 连接池来自 CustomerServiceApplication，
+        // OkHttp 与 Feign Client 来自 HttpTransportConfig
+        CloseableHttpClient pooled = new CustomerServiceApplication().httpClient();
+        Result http1 = run("http1", feignCall(new ApacheHttpClient(pooled)));
+        pooled.close();
+
+        HttpTransportProperties properties = new HttpTransportProperties();
+        properties.setTransport(HttpTransportProperties.Transport.H2C);
+        HttpTransportConfig config = new HttpTransportConfig();
+        OkHttpClient okHttpClient = config.okHttpClient(properties, new SimpleMeterRegistry());
+        Client feignClient = ((LoadBalancerFeignClient) config.feignClient(
+                mock(CachingSpringLoadBalancerFactory.class), mock(SpringClientFactory.class), okHttpClient))
+                .getDelegate();
+        Result h2c = run("h2c", feignCall(feignClient));
+        okHttpClient.dispatcher().executorService().shutdown();
+        okHttpClient.connectionPool().evictAll();
+
+        assertTrue("h2c should multiplex over fewer connections than the HTTP/1.1 pool",
+                h2c.connections < http1.connections);
+    }
+
+    private Callable<Integer> feignCall(Client client) {
+        Request.Options options = new Request.Options(500, 5000);
+        return () -> {
+            Request request = Request.create(Request.HttpMethod.GET, url,
+                    Collections.emptyMap(), null, StandardCharsets.UTF_8);
+            try (Response response = client.execute(request, options)) {
+                Util.toByteArray(response.body().asInputStream());
+                return response.status();
+            }
+        };
+    }
+
+    private Result run(String name, Callable<Integer> call) throws Exception {
+        // 预热，建立连接
+        for (int i = 0; i < CLIENTS; i++) {
+            call.call();
+        }
+        remotePorts.clear();
+
+        ExecutorService executor = Executors.newFixedThreadPool(CLIENTS);
+        List<Future<List<Long>>> futures = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < CLIENTS; i++) {
+            futures.add(executor.submit(() -> {
+                List<Long> latencies = new ArrayList<>(REQUESTS_PER_CLIENT);
+                for (int j = 0; j < REQUESTS_PER_CLIENT; j++) {
+                    long begin = System.nanoTime();
+                    int status = call.call();
+                    if (status != 200) {
+                        throw new IllegalStateException("Unexpected status " + status);
+                    }
+                    latencies.add(System.nanoTime() - begin);
+                }
+                return latencies;
+            }));
+        }
+        List<Long> latencies = new ArrayList<>();
+        for (Future<List<Long>> future : futures) {
+            latencies.addAll(future.get(5, TimeUnit.MINUTES));
+        }
+        long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+
+        Collections.sort(latencies);
+        Result result = new Result(remotePorts.size(),
+                latencies.get((int) Math.ceil(latencies.size() * 0.5) - 1),
+                latencies.get((int) Math.ceil(latencies.size() * 0.99) - 1));
+        log.info("{} connections={} throughput={} req/s p50={}ms p99={}ms",
+                name, result.connections, String.format("%.0f", latencies.size() / (elapsed / 1e9)),
+                String.format("%.1f", result.p50 / 1e6), String.format("%.1f", result.p99 / 1e6));
+        return result;
+    }
+
+    private static class Result {
+        private final int connections;
+        private final long p50;
+        private final long p99;
+
+        Result(int connections, long p50, long p99) {
+            this.connections = connections;
+            this.p50 = p50;
+            this.p99 = p99;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package geektime.spring.springbucks.customer.support;
+
+import feign.Client;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import org.junit.Test;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.boot.web.client.RestTemplateCustomizer;
+import org.springframework.cloud.netflix.ribbon.SpringClientFactory;
+import org.springframework.cloud.openfeign.ribbon.CachingSpringLoadBalancerFactory;
+import org.springframework.cloud.openfeign.ribbon.LoadBalancerFeignClient;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.OkHttp3ClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * 检查 customer.http.transport 对 Feign Client、RestTemplate 的装配，
+ * HttpTransportBenchmarkTest 用的是同一套 Bean 方法
+ */
+public class HttpTransportConfigTest {
+    private final ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+            .withUserConfiguration(Dependencies.class, HttpTransportConfig.class);
+
+    @Test
+    public void http1KeepsApacheHttpClient() {
+        contextRunner.run(context -> {
+            assertTrue(context.getBeansOfType(OkHttpClient.class).isEmpty());
+            assertTrue(context.getBeansOfType(Client.class).isEmpty());
+            assertTrue(context.getBeansOfType(RestTemplateCustomizer.class).isEmpty());
+        });
+    }
+
+    @Test
+    public void h2cUsesPriorKnowledgeForFeignAndRestTemplate() {
+        contextRunner.withPropertyValues("customer.http.transport=h2c").run(context -> {
+            OkHttpClient okHttpClient = context.getBean(OkHttpClient.class);
+            assertEquals(Collections.singletonList(Protocol.H2_PRIOR_KNOWLEDGE), okHttpClient.protocols());
+            assertEquals(1, okHttpClient.interceptors().size());
+
+            Client client = context.getBean(Client.class);
+            assertTrue(client instanceof LoadBalancerFeignClient);
+            assertTrue(((LoadBalancerFeignClient) client).getDelegate() instanceof feign.okhttp.OkHttpClient);
+
+            RestTemplate restTemplate = new RestTemplate();
+            context.getBean(RestTemplateCustomizer.class).customize(restTemplate);
+            assertTrue(restTemplate.getRequestFactory() instanceof OkHttp3ClientHttpRequestFactory);
+        });
+    }
+
+    @Test
+    public void h2FallsBackToHttp11() {
+        contextRunner.withPropertyValues("customer.http.transport=h2").run(context -> {
+            OkHttpClient okHttpClient = context.getBean(OkHttpClient.class);
+            assertEquals(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1), okHttpClient.protocols());
+        });
+    }
+
+    @Configuration
+    @EnableConfigurationProperties(HttpTransportProperties.class)
+    static class Dependencies {
+        @Bean
+        public MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+
+        @Bean
+        public CachingSpringLoadBalancerFactory cachingSpringLoadBalancerFactory() {
+            return mock(CachingSpringLoadBalancerFactory.class);
+        }
+
+        @Bean
+        public SpringClientFactory springClientFactory() {
+            return mock(SpringClientFactory.class);
+        }
+    }
+}
@@ -4,6 +4,9 @@ import com.fasterxml.jackson.datatype.hibernate5.Hibernate5Module;
 import geektime.spring.springbucks.waiter.controller.PerformanceInteceptor;
 import geektime.spring.springbucks.waiter.integration.Barista;
 import geektime.spring.springbucks.waiter.integration.Customer;
+import geektime.spring.springbucks.waiter.support.PerformanceProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.jackson.Jackson2ObjectMapperBuilderCustomizer;
@@ -12,6 +15,7 @@ import org.springframework.cloud.client.discovery.EnableDiscoveryClient;
 import org.springframework.cloud.stream.annotation.EnableBinding;
 import org.springframework.context.annotation.Bean;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
@@ -22,7 +26,12 @@ import java.util.TimeZone;
 @EnableCaching
 @EnableDiscoveryClient
 @EnableBinding({ Barista.class, Customer.class })
+@EnableScheduling
 public class WaiterServiceApplication implements WebMvcConfigurer {
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Autowired
+    private PerformanceProperties performanceProperties;
 
     public static void main(String[] args) {
         SpringApplication.run(WaiterServiceApplication.class, args);
@@ -30,7 +39,7 @@ public class WaiterServiceApplication implements WebMvcConfigurer {
 
     @Override
     public void addInterceptors(InterceptorRegistry registry) {
-        registry.addInterceptor(new PerformanceInteceptor())
+        registry.addInterceptor(new PerformanceInteceptor(meterRegistry, performanceProperties))
                 .addPathPatterns("/coffee/**").addPathPatterns("/order/**");
     }
 
@@ -1,15 +1,11 @@
 package geektime.spring.springbucks.waiter.controller;
 
 import geektime.spring.springbucks.waiter.controller.request.NewCoffeeRequest;
+import geektime.spring.springbucks.waiter.controller.response.ImportSummary;
 import geektime.spring.springbucks.waiter.model.Coffee;
 import geektime.spring.springbucks.waiter.service.CoffeeService;
 import io.github.resilience4j.ratelimiter.annotation.RateLimiter;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.lang3.math.NumberUtils;
-import org.apache.tomcat.util.http.fileupload.IOUtils;
-import org.joda.money.CurrencyUnit;
-import org.joda.money.Money;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -24,10 +20,8 @@ import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
 
 import javax.validation.Valid;
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.util.ArrayList;
+import java.io.InputStream;
 import java.util.List;
 
 @RestController
@@ -52,29 +46,13 @@ public class CoffeeController {
 
     @PostMapping(path = "/", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     @ResponseStatus(HttpStatus.CREATED)
-    public List<Coffee> batchAddCoffee(@RequestParam("file") MultipartFile file) {
-        List<Coffee> coffees = new ArrayList<>();
-        if (!file.isEmpty()) {
-            BufferedReader reader = null;
-            try {
-                reader = new BufferedReader(
-                        new InputStreamReader(file.getInputStream()));
-                String str;
-                while ((str = reader.readLine()) != null) {
-                    String[] arr = StringUtils.split(str, " ");
-                    if (arr != null && arr.length == 2) {
-                        coffees.add(coffeeService.saveCoffee(arr[0],
-                                Money.of(CurrencyUnit.of("CNY"),
-                                        NumberUtils.createBigDecimal(arr[1]))));
-                    }
-                }
-            } catch (IOException e) {
-                log.error("exception", e);
-            } finally {
-                IOUtils.closeQuietly(reader);
-            }
+    public ImportSummary batchAddCoffee(@RequestParam("file") MultipartFile file) throws IOException {
+        if (file.isEmpty()) {
+            return new ImportSummary();
+        }
+        try (InputStream in = file.getInputStream()) {
+            return coffeeService.importCoffee(in);
         }
-        return coffees;
     }
 
     @GetMapping(path = "/", params = "!name")
@@ -2,15 +2,22 @@ package geektime.spring.springbucks.waiter.controller;
 
 import geektime.spring.springbucks.waiter.controller.request.NewOrderRequest;
 import geektime.spring.springbucks.waiter.controller.request.OrderStateRequest;
+import geektime.spring.springbucks.waiter.controller.response.OrderPage;
 import geektime.spring.springbucks.waiter.model.Coffee;
 import geektime.spring.springbucks.waiter.model.CoffeeOrder;
+import geektime.spring.springbucks.waiter.model.OrderState;
+import geektime.spring.springbucks.waiter.repository.OrderSearchCriteria;
 import geektime.spring.springbucks.waiter.service.CoffeeOrderService;
 import geektime.spring.springbucks.waiter.service.CoffeeService;
+import geektime.spring.springbucks.waiter.service.OrderExportService;
 import io.github.resilience4j.ratelimiter.RateLimiter;
 import io.github.resilience4j.ratelimiter.RateLimiterRegistry;
 import io.github.resilience4j.ratelimiter.RequestNotPermitted;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -19,17 +26,27 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Date;
+import java.util.List;
 
 @RestController
 @RequestMapping("/order")
 @Slf4j
 public class CoffeeOrderController {
+    private static final int MAX_PAGE_SIZE = 100;
     @Autowired
     private CoffeeOrderService orderService;
     @Autowired
     private CoffeeService coffeeService;
+    @Autowired
+    private OrderExportService exportService;
     private RateLimiter rateLimiter;
 
     public CoffeeOrderController(RateLimiterRegistry rateLimiterRegistry) {
@@ -48,6 +65,66 @@ public class CoffeeOrderController {
         return order;
     }
 
+    @GetMapping
+    public OrderPage search(@RequestParam(required = false) String customer,
+                            @RequestParam(required = false) OrderState state,
+                            @RequestParam(required = false) String waiter,
+                            @RequestParam(required = false) String barista,
+                            @RequestParam(required = false)
+                            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date from,
+                            @RequestParam(required = false)
+                            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date to,
+                            @RequestParam(required = false) String after,
+                            @RequestParam(defaultValue = "20") int size) {
+        OrderSearchCriteria criteria = OrderSearchCriteria.builder()
+                .customer(customer).state(state)
+                .waiter(waiter).barista(barista)
+                .from(from).to(to)
+                .build();
+        int limit = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        Date afterTime = null;
+        Long afterId = null;
+        if (StringUtils.isNotEmpty(after)) {
+            // 游标格式：createTime毫秒数-id
+            String[] cursor = StringUtils.split(after, "-");
+            if (cursor == null || cursor.length != 2
+                    || !NumberUtils.isDigits(cursor[0]) || !NumberUtils.isDigits(cursor[1])) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor: " + after);
+            }
+            afterTime = new Date(NumberUtils.toLong(cursor[0]));
+            afterId = NumberUtils.toLong(cursor[1]);
+        }
+        log.info("Search orders {} after {}", criteria, after);
+        // 多取一条用来判断是否还有下一页
+        List<CoffeeOrder> orders = orderService.search(criteria, afterTime, afterId, limit + 1);
+        String next = null;
+        if (orders.size() > limit) {
+            orders = orders.subList(0, limit);
+            CoffeeOrder last = orders.get(limit - 1);
+            next = last.getCreateTime().getTime() + "-" + last.getId();
+        }
+        return new OrderPage(orders, next);
+    }
+
+    @GetMapping("/export")
+    public void export(@RequestParam(defaultValue = "ndjson") String format,
+                       @RequestParam(required = false)
+                       @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date from,
+                       @RequestParam(required = false)
+                       @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date to,
+                       HttpServletResponse response) throws IOException {
+        log.info("Export orders from {} to {} as {}", from, to, format);
+        if ("csv".equalsIgnoreCase(format)) {
+            response.setContentType("text/csv;charset=UTF-8");
+            exportService.exportCsv(from, to, response.getOutputStream());
+        } else if ("ndjson".equalsIgnoreCase(format)) {
+            response.setContentType("application/x-ndjson;charset=UTF-8");
+            exportService.exportNdjson(from, to, response.getOutputStream());
+        } else {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unsupported format: " + format);
+        }
+    }
+
     @PostMapping(path = "/", consumes = MediaType.APPLICATION_JSON_VALUE,
             produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
     @ResponseStatus(HttpStatus.CREATED)
@@ -59,12 +136,44 @@ public class CoffeeOrderController {
         return orderService.createOrder(newOrder.getCustomer(), coffeeList);
     }
 
+    @PostMapping(path = "/paid", consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    @ResponseStatus(HttpStatus.CREATED)
+    @io.github.resilience4j.ratelimiter.annotation.RateLimiter(name = "order")
+    public CoffeeOrder createPaid(@RequestBody NewOrderRequest newOrder) {
+        log.info("Receive new PAID Order {}", newOrder);
+        Coffee[] coffeeList = coffeeService.getCoffeeByName(newOrder.getItems())
+                .toArray(new Coffee[] {});
+        return orderService.createPaidOrder(newOrder.getCustomer(), coffeeList);
+    }
+
+    @PostMapping(path = "/batch", consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    @ResponseStatus(HttpStatus.CREATED)
+    @io.github.resilience4j.ratelimiter.annotation.RateLimiter(name = "order")
+    public List<CoffeeOrder> batchCreate(@RequestBody List<NewOrderRequest> newOrders) {
+        if (newOrders == null || newOrders.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "No orders in the batch.");
+        }
+        for (int i = 0; i < newOrders.size(); i++) {
+            NewOrderRequest order = newOrders.get(i);
+            if (order == null || order.getItems() == null || order.getItems().isEmpty()) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Order " + i + " has no items.");
+            }
+        }
+        log.info("Receive {} new Orders", newOrders.size());
+        try {
+            return orderService.createOrders(newOrders);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+
     @PutMapping("/{id}")
     public CoffeeOrder updateState(@PathVariable("id") Long id,
                                    @RequestBody OrderStateRequest orderState) {
         log.info("Update order {} with state {}", id, orderState);
-        CoffeeOrder order = orderService.get(id);
-        orderService.updateState(order, orderState.getState());
-        return order;
+        orderService.updateState(id, orderState.getState());
+        return orderService.get(id);
     }
 }
@@ -1,46 +1,121 @@
 package geektime.spring.springbucks.waiter.controller;
 
+import geektime.spring.springbucks.waiter.support.PerformanceProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.util.StopWatch;
 import org.springframework.web.method.HandlerMethod;
 import org.springframework.web.servlet.HandlerInterceptor;
 import org.springframework.web.servlet.ModelAndView;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
+/**
+ * 记录处理耗时（preHandle ~ postHandle）与视图/序列化耗时（postHandle ~ afterCompletion）
+ * Timer 按处理方法和状态码缓存，线程内复用 long[]，请求路径上不产生额外对象
+ */
 @Slf4j
 public class PerformanceInteceptor implements HandlerInterceptor {
-    private ThreadLocal<StopWatch> stopWatch = new ThreadLocal<>();
+    private static final int MAX_STATUS = 600;
+
+    private final ThreadLocal<long[]> timestamps = ThreadLocal.withInitial(() -> new long[2]);
+    private final ConcurrentMap<Object, HandlerTimers> timers = new ConcurrentHashMap<>();
+    private final MeterRegistry meterRegistry;
+    private final PerformanceProperties properties;
+
+    public PerformanceInteceptor(MeterRegistry meterRegistry, PerformanceProperties properties) {
+        this.meterRegistry = meterRegistry;
+        this.properties = properties;
+    }
 
     @Override
     public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
-        StopWatch sw = new StopWatch();
-        stopWatch.set(sw);
-        sw.start();
+        long[] t = timestamps.get();
+        t[0] = System.nanoTime();
+        t[1] = 0;
         return true;
     }
 
     @Override
     public void postHandle(HttpServletRequest request, HttpServletResponse response, Object handler, ModelAndView modelAndView) throws Exception {
-        stopWatch.get().stop();
-        stopWatch.get().start();
+        timestamps.get()[1] = System.nanoTime();
     }
 
     @Override
     public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) throws Exception {
-        StopWatch sw = stopWatch.get();
-        sw.stop();
-        String method = handler.getClass().getSimpleName();
+        long end = System.nanoTime();
+        long[] t = timestamps.get();
+        // 出现异常时不会调用 postHandle
+        long handled = t[1] == 0 ? end : t[1];
+        long handleTime = handled - t[0];
+        long viewTime = end - handled;
+        int status = response.getStatus();
+
+        Object key = handler instanceof HandlerMethod ? ((HandlerMethod) handler).getMethod() : handler.getClass();
+        HandlerTimers handlerTimers = timers.get(key);
+        if (handlerTimers == null) {
+            handlerTimers = timers.computeIfAbsent(key, k -> new HandlerTimers(handlerName(handler)));
+        }
+        if (properties.isMetricsEnabled()) {
+            handlerTimers.handle(status).record(handleTime, TimeUnit.NANOSECONDS);
+            handlerTimers.view(status).record(viewTime, TimeUnit.NANOSECONDS);
+        }
+        if (properties.isLogEnabled()
+                && ThreadLocalRandom.current().nextDouble() < properties.getLogSampleRate()) {
+            log.info("{};{};{};{};{}ms;{}ms;{}ms", request.getRequestURI(), handlerTimers.name,
+                    status, ex == null ? "-" : ex.getClass().getSimpleName(),
+                    TimeUnit.NANOSECONDS.toMillis(end - t[0]),
+                    TimeUnit.NANOSECONDS.toMillis(handleTime),
+                    TimeUnit.NANOSECONDS.toMillis(viewTime));
+        }
+    }
+
+    private String handlerName(Object handler) {
         if (handler instanceof HandlerMethod) {
             String beanType = ((HandlerMethod) handler).getBeanType().getName();
             String methodName = ((HandlerMethod) handler).getMethod().getName();
-            method = beanType + "." + methodName;
+            return beanType + "." + methodName;
+        }
+        return handler.getClass().getSimpleName();
+    }
+
+    private class HandlerTimers {
+        private final String name;
+        private final AtomicReferenceArray<Timer> handle = new AtomicReferenceArray<>(MAX_STATUS);
+        private final AtomicReferenceArray<Timer> view = new AtomicReferenceArray<>(MAX_STATUS);
+
+        HandlerTimers(String name) {
+            this.name = name;
+        }
+
+        Timer handle(int status) {
+            return timer(handle, "waiter.request.handle", status);
+        }
+
+        Timer view(int status) {
+            return timer(view, "waiter.request.view", status);
+        }
+
+        private Timer timer(AtomicReferenceArray<Timer> cache, String metric, int status) {
+            int index = status > 0 && status < MAX_STATUS ? status : 0;
+            Timer timer = cache.get(index);
+            if (timer == null) {
+                timer = Timer.builder(metric)
+                        .tag("handler", name)
+                        .tag("status", String.valueOf(status))
+                        .publishPercentiles(properties.getPercentiles())
+                        .sla(properties.getSla().toArray(new Duration[0]))
+                        .register(meterRegistry);
+                cache.set(index, timer);
+            }
+            return timer;
         }
-        log.info("{};{};{};{};{}ms;{}ms;{}ms", request.getRequestURI(), method,
-                response.getStatus(), ex == null ? "-" : ex.getClass().getSimpleName(),
-                sw.getTotalTimeMillis(), sw.getTotalTimeMillis() - sw.getLastTaskTimeMillis(),
-                sw.getLastTaskTimeMillis());
-        stopWatch.remove();
     }
 }
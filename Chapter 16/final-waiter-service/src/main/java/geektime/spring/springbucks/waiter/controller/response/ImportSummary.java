@@ -0,0 +1,32 @@
+package geektime.spring.springbucks.waiter.controller.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Getter
+@Setter
+@ToString
+public class ImportSummary {
+    private long lines;
+    private long imported;
+    private long rejected;
+    /**
+     * 只保留前若干条被拒绝的行，避免大文件把响应撑大
+     */
+    private List<RejectedLine> rejectedLines = new ArrayList<>();
+    private long elapsedMillis;
+
+    @Getter
+    @AllArgsConstructor
+    @ToString
+    public static class RejectedLine {
+        private long line;
+        private String content;
+        private String reason;
+    }
+}
@@ -0,0 +1,19 @@
+package geektime.spring.springbucks.waiter.controller.response;
+
+import geektime.spring.springbucks.waiter.model.CoffeeOrder;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.List;
+
+@Getter
+@AllArgsConstructor
+@ToString
+public class OrderPage {
+    private List<CoffeeOrder> orders;
+    /**
+     * 下一页的游标，没有更多数据时为 null
+     */
+    private String next;
+}
@@ -8,6 +8,10 @@ import org.springframework.messaging.SubscribableChannel;
 public interface Barista {
     String NEW_ORDERS = "newOrders";
     String FINISHED_ORDERS = "finishedOrders";
+    /**
+     * barista-service 批量模式下一条 finishedOrders 消息携带整批订单事件，这个头记录事件个数
+     */
+    String BATCH_SIZE_HEADER = "batch-size";
 
     @Input
     SubscribableChannel finishedOrders();
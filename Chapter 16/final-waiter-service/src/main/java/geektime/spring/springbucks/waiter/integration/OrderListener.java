@@ -1,6 +1,7 @@
 package geektime.spring.springbucks.waiter.integration;
 
 import geektime.spring.springbucks.waiter.model.CoffeeOrder;
+import geektime.spring.springbucks.waiter.model.OrderEvent;
 import geektime.spring.springbucks.waiter.service.CoffeeOrderService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -9,6 +10,8 @@ import org.springframework.messaging.Message;
 import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
+
 @Component
 @Slf4j
 public class OrderListener {
@@ -17,14 +20,38 @@ public class OrderListener {
     @Autowired
     private CoffeeOrderService orderService;
 
-    @StreamListener(Barista.FINISHED_ORDERS)
-    public void listenFinishedOrders(Long id) {
-        log.info("We've finished an order [{}].", id);
-        CoffeeOrder order = orderService.get(id);
-        Message<Long> message = MessageBuilder.withPayload(id)
-                .setHeader("customer", order.getCustomer())
+    @StreamListener(target = Barista.FINISHED_ORDERS,
+            condition = "headers['" + Barista.BATCH_SIZE_HEADER + "'] == null")
+    public void listenFinishedOrders(OrderEvent event) {
+        log.info("We've finished an order [{}].", event.getId());
+        notifyCustomer(event);
+    }
+
+    /**
+     * 批量模式下整批完成的订单在一条消息里，处理失败时整条消息重新投递，顾客可能收到重复通知
+     */
+    @StreamListener(target = Barista.FINISHED_ORDERS,
+            condition = "headers['" + Barista.BATCH_SIZE_HEADER + "'] != null")
+    public void listenFinishedOrderBatch(List<OrderEvent> events) {
+        log.info("We've finished {} orders.", events.size());
+        events.forEach(this::notifyCustomer);
+    }
+
+    private void notifyCustomer(OrderEvent event) {
+        if (!event.hasState()) {
+            // 旧版本的消息只有订单 ID
+            CoffeeOrder order = orderService.get(event.getId());
+            if (order == null) {
+                // 订单已不存在，重试也不会成功，直接丢弃
+                log.warn("Order {} does not exist, drop the notification.", event.getId());
+                return;
+            }
+            event = OrderEvent.from(order);
+        }
+        Message<OrderEvent> message = MessageBuilder.withPayload(event)
+                .setHeader("customer", event.getCustomer())
                 .build();
-        log.info("Notify the customer: {}", order.getCustomer());
+        log.info("Notify the customer: {}", event.getCustomer());
         customer.notification().send(message);
     }
 }
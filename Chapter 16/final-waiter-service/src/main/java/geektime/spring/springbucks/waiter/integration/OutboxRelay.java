@@ -0,0 +1,100 @@
+package geektime.spring.springbucks.waiter.integration;
+
+import geektime.spring.springbucks.waiter.model.OutboxEvent;
+import geektime.spring.springbucks.waiter.repository.OutboxEventRepository;
+import geektime.spring.springbucks.waiter.support.OutboxProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageBuilder;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cloud.stream.binding.BinderAwareChannelResolver;
+import org.springframework.cloud.stream.config.BindingServiceProperties;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.support.GenericMessage;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * 将 T_OUTBOX 中的事件批量投递到 Binding 对应的 Exchange
+ * 投递前先用带条件的 UPDATE 认领一批事件，多个实例不会同时投递同一条事件
+ * 每批只等待一次 Publisher Confirm，确认后按认领标识删除，失败则释放认领留待下次重试
+ * 投递后、删除前实例退出时，认领超时后会被重新投递，消费者仍需要幂等
+ */
+@Component
+@Slf4j
+public class OutboxRelay {
+    @Autowired
+    private OutboxEventRepository outboxRepository;
+    @Autowired
+    private RabbitTemplate rabbitTemplate;
+    @Autowired
+    private BindingServiceProperties bindingServiceProperties;
+    @Autowired
+    private OutboxProperties outboxProperties;
+    @Autowired
+    private BinderAwareChannelResolver channelResolver;
+
+    @Scheduled(fixedDelayString = "${outbox.relay-interval:500}")
+    public void relay() {
+        List<Long> candidates;
+        do {
+            Date now = new Date();
+            Date expired = new Date(now.getTime() - outboxProperties.getClaimTimeout());
+            candidates = outboxRepository.findClaimableIds(expired,
+                    PageRequest.of(0, outboxProperties.getBatchSize()));
+            if (candidates.isEmpty()) {
+                return;
+            }
+            // 每一批使用独立的认领标识，只投递、删除本批认领成功的事件
+            String owner = UUID.randomUUID().toString();
+            if (outboxRepository.claim(candidates, owner, now, expired) == 0) {
+                continue;
+            }
+            List<OutboxEvent> events = outboxRepository.findByClaimedByOrderById(owner);
+            try {
+                publish(events);
+            } catch (Exception e) {
+                log.warn("Failed to relay {} outbox events, will retry later: {}",
+                        events.size(), e.getMessage());
+                outboxRepository.release(owner);
+                return;
+            }
+            outboxRepository.deleteClaimed(owner);
+            log.info("Relayed {} outbox events.", events.size());
+        } while (candidates.size() == outboxProperties.getBatchSize());
+    }
+
+    private void publish(List<OutboxEvent> events) {
+        if (outboxProperties.getPublisher() == OutboxProperties.Publisher.BINDING) {
+            events.forEach(event -> channelResolver.resolveDestination(event.getDestination())
+                    .send(new GenericMessage<>(event.getPayload().getBytes(StandardCharsets.UTF_8),
+                            Collections.singletonMap(MessageHeaders.CONTENT_TYPE,
+                                    MessageProperties.CONTENT_TYPE_JSON))));
+            return;
+        }
+        rabbitTemplate.invoke(operations -> {
+            for (OutboxEvent event : events) {
+                String exchange = bindingServiceProperties.getBindingDestination(event.getDestination());
+                operations.send(exchange, exchange, toMessage(event));
+            }
+            operations.waitForConfirmsOrDie(outboxProperties.getConfirmTimeout());
+            return null;
+        });
+    }
+
+    private Message toMessage(OutboxEvent event) {
+        return MessageBuilder.withBody(event.getPayload().getBytes(StandardCharsets.UTF_8))
+                .setContentType(MessageProperties.CONTENT_TYPE_JSON)
+                .setMessageId(String.valueOf(event.getId()))
+                .build();
+    }
+}
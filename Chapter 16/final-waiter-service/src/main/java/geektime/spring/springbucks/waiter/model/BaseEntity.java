@@ -4,11 +4,11 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.GenericGenerator;
 import org.hibernate.annotations.UpdateTimestamp;
 
 import javax.persistence.Column;
 import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.MappedSuperclass;
 import java.io.Serializable;
@@ -22,7 +22,10 @@ import java.util.Date;
 //@JsonIgnoreProperties(value = {"hibernateLazyInitializer"})
 public class BaseEntity implements Serializable {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // IDENTITY 会关闭 Hibernate 的批量插入，改用可切换的生成策略
+    @GeneratedValue(generator = "springbucks-id")
+    @GenericGenerator(name = "springbucks-id",
+            strategy = "geektime.spring.springbucks.waiter.support.SpringbucksIdGenerator")
     private Long id;
     @Column(updatable = false)
     @CreationTimestamp
@@ -0,0 +1,31 @@
+package geektime.spring.springbucks.waiter.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import javax.persistence.Entity;
+import javax.persistence.Table;
+import java.io.Serializable;
+import java.util.Date;
+
+@Entity
+@Table(name = "T_OUTBOX")
+@Builder
+@Data
+@EqualsAndHashCode(callSuper = true)
+@ToString(callSuper = true)
+@NoArgsConstructor
+@AllArgsConstructor
+public class OutboxEvent extends BaseEntity implements Serializable {
+    private String destination;
+    private String payload;
+    /**
+     * 投递前由 OutboxRelay 认领，避免多个实例同时投递同一条事件
+     */
+    private String claimedBy;
+    private Date claimedAt;
+}
@@ -1,7 +1,27 @@
 package geektime.spring.springbucks.waiter.repository;
 
 import geektime.spring.springbucks.waiter.model.CoffeeOrder;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
-public interface CoffeeOrderRepository extends JpaRepository<CoffeeOrder, Long> {
+import java.util.Date;
+import java.util.Optional;
+
+public interface CoffeeOrderRepository extends JpaRepository<CoffeeOrder, Long>, CoffeeOrderRepositoryCustom {
+    /**
+     * 订单与 items 通过一条 left join 语句取回，序列化时不再触发懒加载
+     */
+    @EntityGraph(attributePaths = "items")
+    Optional<CoffeeOrder> findWithItemsById(Long id);
+
+    /**
+     * 只允许状态向后流转，返回 0 说明订单不存在或已被其他请求抢先更新
+     */
+    @Modifying(clearAutomatically = true)
+    @Query(value = "update t_order set state = :state, update_time = :now " +
+            "where id = :id and state < :state", nativeQuery = true)
+    int updateState(@Param("id") Long id, @Param("state") int state, @Param("now") Date now);
 }
@@ -0,0 +1,13 @@
+package geektime.spring.springbucks.waiter.repository;
+
+import geektime.spring.springbucks.waiter.model.CoffeeOrder;
+
+import java.util.Date;
+import java.util.List;
+
+public interface CoffeeOrderRepositoryCustom {
+    /**
+     * 按 (create_time, id) 做 Keyset 分页，返回 after 之后的最多 limit 个订单，items 已加载
+     */
+    List<CoffeeOrder> search(OrderSearchCriteria criteria, Date afterTime, Long afterId, int limit);
+}
@@ -0,0 +1,79 @@
+package geektime.spring.springbucks.waiter.repository;
+
+import geektime.spring.springbucks.waiter.model.CoffeeOrder;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+public class CoffeeOrderRepositoryCustomImpl implements CoffeeOrderRepositoryCustom {
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<CoffeeOrder> search(OrderSearchCriteria criteria, Date afterTime, Long afterId, int limit) {
+        Map<String, Object> params = new HashMap<>();
+        StringBuilder jpql = new StringBuilder("select o.id from CoffeeOrder o where 1 = 1");
+        if (criteria.getCustomer() != null) {
+            jpql.append(" and o.customer = :customer");
+            params.put("customer", criteria.getCustomer());
+        }
+        if (criteria.getState() != null) {
+            jpql.append(" and o.state = :state");
+            params.put("state", criteria.getState());
+        }
+        if (criteria.getWaiter() != null) {
+            jpql.append(" and o.waiter = :waiter");
+            params.put("waiter", criteria.getWaiter());
+        }
+        if (criteria.getBarista() != null) {
+            jpql.append(" and o.barista = :barista");
+            params.put("barista", criteria.getBarista());
+        }
+        if (criteria.getFrom() != null) {
+            jpql.append(" and o.createTime >= :from");
+            params.put("from", criteria.getFrom());
+        }
+        if (criteria.getTo() != null) {
+            jpql.append(" and o.createTime < :to");
+            params.put("to", criteria.getTo());
+        }
+        if (afterTime != null && afterId != null) {
+            // 不用 OFFSET，直接从上一页最后一条记录之后开始扫描索引
+            jpql.append(" and (o.createTime > :afterTime or (o.createTime = :afterTime and o.id > :afterId))");
+            params.put("afterTime", afterTime);
+            params.put("afterId", afterId);
+        }
+        jpql.append(" order by o.createTime, o.id");
+
+        TypedQuery<Long> idQuery = entityManager.createQuery(jpql.toString(), Long.class)
+                .setMaxResults(limit);
+        params.forEach(idQuery::setParameter);
+        List<Long> ids = idQuery.getResultList();
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        // 第二条语句一次取回这一页订单及其 items
+        List<CoffeeOrder> orders = entityManager.createQuery(
+                "select distinct o from CoffeeOrder o left join fetch o.items where o.id in :ids",
+                CoffeeOrder.class)
+                .setParameter("ids", ids)
+                .setHint("hibernate.query.passDistinctThrough", false)
+                .getResultList();
+        Map<Long, Integer> position = new HashMap<>();
+        for (int i = 0; i < ids.size(); i++) {
+            position.put(ids.get(i), i);
+        }
+        return orders.stream()
+                .sorted(Comparator.comparing(o -> position.get(o.getId())))
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,20 @@
+package geektime.spring.springbucks.waiter.repository;
+
+import geektime.spring.springbucks.waiter.model.OrderState;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.Date;
+
+@Getter
+@Builder
+@ToString
+public class OrderSearchCriteria {
+    private String customer;
+    private OrderState state;
+    private String waiter;
+    private String barista;
+    private Date from;
+    private Date to;
+}
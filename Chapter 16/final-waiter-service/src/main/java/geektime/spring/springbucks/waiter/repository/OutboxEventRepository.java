@@ -0,0 +1,43 @@
+package geektime.spring.springbucks.waiter.repository;
+
+import geektime.spring.springbucks.waiter.model.OutboxEvent;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+    /**
+     * 未被认领，或认领已超时（认领的实例可能已经退出）的事件
+     */
+    @Query("select e.id from OutboxEvent e where e.claimedBy is null or e.claimedAt < :expired order by e.id")
+    List<Long> findClaimableIds(@Param("expired") Date expired, Pageable pageable);
+
+    /**
+     * 带条件的 UPDATE，多个实例认领同一批事件时每一行只有一个实例能更新成功
+     */
+    @Modifying
+    @Transactional
+    @Query("update OutboxEvent e set e.claimedBy = :owner, e.claimedAt = :now " +
+            "where e.id in :ids and (e.claimedBy is null or e.claimedAt < :expired)")
+    int claim(@Param("ids") Collection<Long> ids, @Param("owner") String owner,
+              @Param("now") Date now, @Param("expired") Date expired);
+
+    List<OutboxEvent> findByClaimedByOrderById(String owner);
+
+    @Modifying
+    @Transactional
+    @Query("update OutboxEvent e set e.claimedBy = null, e.claimedAt = null where e.claimedBy = :owner")
+    int release(@Param("owner") String owner);
+
+    @Modifying
+    @Transactional
+    @Query("delete from OutboxEvent e where e.claimedBy = :owner")
+    int deleteClaimed(@Param("owner") String owner);
+}
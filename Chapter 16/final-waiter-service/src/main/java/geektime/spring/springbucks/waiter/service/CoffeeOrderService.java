@@ -1,10 +1,18 @@
 package geektime.spring.springbucks.waiter.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import geektime.spring.springbucks.waiter.controller.request.NewOrderRequest;
 import geektime.spring.springbucks.waiter.integration.Barista;
 import geektime.spring.springbucks.waiter.model.Coffee;
 import geektime.spring.springbucks.waiter.model.CoffeeOrder;
+import geektime.spring.springbucks.waiter.model.OrderEvent;
 import geektime.spring.springbucks.waiter.model.OrderState;
+import geektime.spring.springbucks.waiter.model.OutboxEvent;
 import geektime.spring.springbucks.waiter.repository.CoffeeOrderRepository;
+import geektime.spring.springbucks.waiter.repository.CoffeeRepository;
+import geektime.spring.springbucks.waiter.repository.OrderSearchCriteria;
+import geektime.spring.springbucks.waiter.repository.OutboxEventRepository;
 import geektime.spring.springbucks.waiter.support.OrderProperties;
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
@@ -12,17 +20,19 @@ import io.micrometer.core.instrument.binder.MeterBinder;
 import lombok.extern.slf4j.Slf4j;
 import org.joda.money.Money;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.RoundingMode;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.function.Function;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 @Service
 @Transactional
@@ -31,49 +41,99 @@ public class CoffeeOrderService implements MeterBinder {
     @Autowired
     private CoffeeOrderRepository orderRepository;
     @Autowired
+    private CoffeeRepository coffeeRepository;
+    @Autowired
     private OrderProperties orderProperties;
     @Autowired
-    private Barista barista;
+    private OutboxEventRepository outboxRepository;
+    @Autowired
+    private ObjectMapper objectMapper;
 
     private String waiterId = UUID.randomUUID().toString();
 
     private Counter orderCounter = null;
 
+    @Transactional(readOnly = true)
     public CoffeeOrder get(Long id) {
-        return orderRepository.getOne(id);
+        return orderRepository.findWithItemsById(id).orElse(null);
+    }
+
+    @Transactional(readOnly = true)
+    public List<CoffeeOrder> search(OrderSearchCriteria criteria, Date afterTime, Long afterId, int limit) {
+        return orderRepository.search(criteria, afterTime, afterId, limit);
     }
 
     public CoffeeOrder createOrder(String customer, Coffee...coffee) {
-        CoffeeOrder order = CoffeeOrder.builder()
-                .customer(customer)
-                .items(new ArrayList<>(Arrays.asList(coffee)))
-                .discount(orderProperties.getDiscount())
-                .total(calcTotal(coffee))
-                .state(OrderState.INIT)
-                .waiter(orderProperties.getWaiterPrefix() + waiterId)
-                .build();
-        CoffeeOrder saved = orderRepository.save(order);
+        CoffeeOrder saved = orderRepository.save(buildOrder(customer, Arrays.asList(coffee)));
         log.info("New Order: {}", saved);
         orderCounter.increment();
         return saved;
     }
 
-    public boolean updateState(CoffeeOrder order, OrderState state) {
-        if (order == null) {
-            log.warn("Can not find order.");
-            return false;
+    /**
+     * 创建已支付的订单，订单与 Outbox 在同一个事务中写入
+     * 省去先创建再更新状态的一次往返和一次事务
+     */
+    public CoffeeOrder createPaidOrder(String customer, Coffee...coffee) {
+        CoffeeOrder order = buildOrder(customer, Arrays.asList(coffee));
+        order.setState(OrderState.PAID);
+        CoffeeOrder saved = orderRepository.save(order);
+        outboxRepository.save(OutboxEvent.builder()
+                .destination(Barista.NEW_ORDERS)
+                .payload(toJson(OrderEvent.from(saved)))
+                .build());
+        log.info("New PAID Order: {}", saved);
+        orderCounter.increment();
+        return saved;
+    }
+
+    /**
+     * 批量创建订单，所有订单在同一个事务中通过 saveAll 写入，
+     * 配合 hibernate.jdbc.batch_size 使用 JDBC 批处理，返回顺序与入参一致
+     */
+    public List<CoffeeOrder> createOrders(List<NewOrderRequest> requests) {
+        List<String> names = requests.stream()
+                .filter(r -> r.getItems() != null)
+                .flatMap(r -> r.getItems().stream())
+                .distinct()
+                .collect(Collectors.toList());
+        Map<String, Coffee> menu = names.isEmpty() ? Collections.emptyMap() :
+                coffeeRepository.findByNameInOrderById(names).stream()
+                        .collect(Collectors.toMap(Coffee::getName, Function.identity()));
+        // 有任何一个咖啡不在菜单上就拒绝整批，不能悄悄少做几杯、少收钱
+        List<String> unknown = names.stream()
+                .filter(n -> !menu.containsKey(n))
+                .collect(Collectors.toList());
+        if (!unknown.isEmpty()) {
+            throw new IllegalArgumentException("Unknown coffee: " + unknown);
         }
-        if (state.compareTo(order.getState()) <= 0) {
-            log.warn("Wrong State order: {}, {}", state, order.getState());
+
+        List<CoffeeOrder> orders = requests.stream()
+                .map(r -> buildOrder(r.getCustomer(), r.getItems() == null ? Collections.emptyList() :
+                        r.getItems().stream()
+                                .map(menu::get)
+                                .collect(Collectors.toList())))
+                .collect(Collectors.toList());
+        List<CoffeeOrder> saved = orderRepository.saveAll(orders);
+        log.info("New Orders: {}", saved.size());
+        orderCounter.increment(saved.size());
+        return saved;
+    }
+
+    public boolean updateState(Long id, OrderState state) {
+        // 一条带条件的 UPDATE 完成状态流转，并发请求中只有一个能成功
+        if (orderRepository.updateState(id, state.ordinal(), new Date()) == 0) {
+            log.warn("Can not update order {} to state {}.", id, state);
             return false;
         }
-        order.setState(state);
-        orderRepository.save(order);
-        log.info("Updated Order: {}", order);
+        log.info("Updated Order {} to state {}", id, state);
         if (state == OrderState.PAID) {
-            // 有返回值，如果要关注发送结果，则判断返回值
-            // 一般消息体不会这么简单
-            barista.newOrders().send(MessageBuilder.withPayload(order.getId()).build());
+            // 与状态变更在同一个事务中写入 Outbox，由 OutboxRelay 异步批量投递
+            // 消息中带上订单内容，咖啡师不必再查询订单
+            outboxRepository.save(OutboxEvent.builder()
+                    .destination(Barista.NEW_ORDERS)
+                    .payload(toJson(OrderEvent.from(get(id))))
+                    .build());
         }
         return true;
     }
@@ -83,8 +143,27 @@ public class CoffeeOrderService implements MeterBinder {
         this.orderCounter = meterRegistry.counter("order.count");
     }
 
-    private Money calcTotal(Coffee...coffee) {
-        List<Money> items = Stream.of(coffee).map(c -> c.getPrice())
+    private String toJson(OrderEvent event) {
+        try {
+            return objectMapper.writeValueAsString(event);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Can not serialize event of order " + event.getId(), e);
+        }
+    }
+
+    private CoffeeOrder buildOrder(String customer, List<Coffee> coffee) {
+        return CoffeeOrder.builder()
+                .customer(customer)
+                .items(new ArrayList<>(coffee))
+                .discount(orderProperties.getDiscount())
+                .total(calcTotal(coffee))
+                .state(OrderState.INIT)
+                .waiter(orderProperties.getWaiterPrefix() + waiterId)
+                .build();
+    }
+
+    private Money calcTotal(List<Coffee> coffee) {
+        List<Money> items = coffee.stream().map(c -> c.getPrice())
                 .collect(Collectors.toList());
         return Money.total(items).multipliedBy(orderProperties.getDiscount())
                 .dividedBy(100, RoundingMode.HALF_UP);
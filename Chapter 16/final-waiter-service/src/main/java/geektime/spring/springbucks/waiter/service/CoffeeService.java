@@ -1,47 +1,167 @@
 package geektime.spring.springbucks.waiter.service;
 
+import geektime.spring.springbucks.waiter.controller.response.ImportSummary;
 import geektime.spring.springbucks.waiter.model.Coffee;
 import geektime.spring.springbucks.waiter.repository.CoffeeRepository;
+import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.joda.money.CurrencyUnit;
 import org.joda.money.Money;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.annotation.CacheConfig;
+import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
+import org.springframework.dao.DataAccessException;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
 
+/**
+ * CoffeeCache 的一级缓存在进程内共享对象，查询方法返回的 Coffee 和 List 都不能修改
+ */
 @Service
 @Slf4j
 @CacheConfig(cacheNames = "CoffeeCache")
 public class CoffeeService {
+    private static final int MAX_REJECTED_LINES = 100;
     @Autowired
     private CoffeeRepository coffeeRepository;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Value("${coffee.import-chunk-size:500}")
+    private int importChunkSize;
 
+    @CacheEvict(allEntries = true)
     public Coffee saveCoffee(String name, Money price) {
         return coffeeRepository.save(Coffee.builder().name(name).price(price).build());
     }
 
-    @Cacheable
+    /**
+     * 逐行解析上传的菜单，每 chunkSize 行在一个事务里 saveAll 一次
+     * 某个分块保存失败时，在各自的事务里逐行重试，只有真正写不进去的行被拒绝
+     * 每行格式为“名称 价格”，格式错误和保存失败的行都记录在结果里
+     */
+    @CacheEvict(allEntries = true)
+    public ImportSummary importCoffee(InputStream in) throws IOException {
+        long start = System.currentTimeMillis();
+        ImportSummary summary = new ImportSummary();
+        List<ImportLine> chunk = new ArrayList<>(importChunkSize);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            long lineNumber = summary.getLines() + 1;
+            summary.setLines(lineNumber);
+            if (StringUtils.isBlank(line)) {
+                continue;
+            }
+            String[] arr = StringUtils.split(line, " ");
+            if (arr == null || arr.length != 2) {
+                reject(summary, lineNumber, line, "Expecting \"name price\"");
+                continue;
+            }
+            if (!NumberUtils.isParsable(arr[1])) {
+                reject(summary, lineNumber, line, "Invalid price");
+                continue;
+            }
+            chunk.add(new ImportLine(lineNumber, line, arr[0],
+                    Money.of(CurrencyUnit.of("CNY"), NumberUtils.createBigDecimal(arr[1]), RoundingMode.HALF_UP)));
+            if (chunk.size() >= importChunkSize) {
+                saveChunk(summary, chunk);
+            }
+        }
+        if (!chunk.isEmpty()) {
+            saveChunk(summary, chunk);
+        }
+        summary.setElapsedMillis(System.currentTimeMillis() - start);
+        log.info("Import coffee: {}", summary);
+        return summary;
+    }
+
+    @Cacheable(key = "'all'")
     public List<Coffee> getAllCoffee() {
         return coffeeRepository.findAll(Sort.by("id"));
     }
 
     public Coffee getCoffee(Long id) {
-//        return coffeeRepository.findById(id).get();
-        return coffeeRepository.getOne(id);
+        // getOne 返回的代理在事务外无法初始化
+        return coffeeRepository.findById(id).orElse(null);
     }
 
     public long getCoffeeCount() {
         return coffeeRepository.count();
     }
 
+    @Cacheable(key = "'name:' + #name", unless = "#result == null")
     public Coffee getCoffee(String name) {
         return coffeeRepository.findByName(name);
     }
 
+    @Cacheable(key = "'names:' + #names")
     public List<Coffee> getCoffeeByName(List<String> names) {
         return coffeeRepository.findByNameInOrderById(names);
     }
+
+    private void saveChunk(ImportSummary summary, List<ImportLine> chunk) {
+        try {
+            List<Coffee> coffee = chunk.stream().map(ImportLine::toCoffee).collect(Collectors.toList());
+            transactionTemplate.execute(status -> coffeeRepository.saveAll(coffee));
+            summary.setImported(summary.getImported() + chunk.size());
+        } catch (DataAccessException | TransactionException e) {
+            log.warn("Failed to save line {} - {}, retry line by line: {}", chunk.get(0).number,
+                    chunk.get(chunk.size() - 1).number, ExceptionUtils.getRootCauseMessage(e));
+            chunk.forEach(line -> saveLine(summary, line));
+        }
+        chunk.clear();
+    }
+
+    /**
+     * 回滚的事务里 ID 已经分配给了实体，重试时重新构造，不复用上一次的对象
+     */
+    private void saveLine(ImportSummary summary, ImportLine line) {
+        try {
+            transactionTemplate.execute(status -> coffeeRepository.save(line.toCoffee()));
+            summary.setImported(summary.getImported() + 1);
+        } catch (DataAccessException | TransactionException e) {
+            log.warn("Failed to save line {}: {}", line.number, ExceptionUtils.getRootCauseMessage(e));
+            reject(summary, line.number, line.content, ExceptionUtils.getRootCauseMessage(e));
+        }
+    }
+
+    private void reject(ImportSummary summary, long line, String content, String reason) {
+        summary.setRejected(summary.getRejected() + 1);
+        addRejectedLine(summary, new ImportSummary.RejectedLine(line, content, reason));
+    }
+
+    private void addRejectedLine(ImportSummary summary, ImportSummary.RejectedLine rejectedLine) {
+        if (summary.getRejectedLines().size() < MAX_REJECTED_LINES) {
+            summary.getRejectedLines().add(rejectedLine);
+        }
+    }
+
+    @AllArgsConstructor
+    private static class ImportLine {
+        private final long number;
+        private final String content;
+        private final String name;
+        private final Money price;
+
+        Coffee toCoffee() {
+            return Coffee.builder().name(name).price(price).build();
+        }
+    }
 }
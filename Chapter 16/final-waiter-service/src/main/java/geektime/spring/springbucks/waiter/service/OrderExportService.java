@@ -0,0 +1,232 @@
+package geektime.spring.springbucks.waiter.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.MinimalPrettyPrinter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import geektime.spring.springbucks.waiter.model.OrderState;
+import geektime.spring.springbucks.waiter.support.OrderProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.joda.money.CurrencyUnit;
+import org.joda.money.Money;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 以只进游标逐行读取订单，边读边写到输出流，内存占用与导出行数无关
+ * MySQL 只对导出语句开启流式结果集（fetch size 为 Integer.MIN_VALUE），不影响连接池里的其他查询
+ * 响应头在第一行写出时就已提交，导出中途出错无法再返回错误码，所以导出完成后最后追加一行记录数：
+ * NDJSON 为 {"count":N}，CSV 为 #count=N，客户端没有读到这一行、或条数不符时应视为导出不完整
+ */
+@Service
+@Slf4j
+public class OrderExportService {
+    private static final String SQL = "select o.id, o.customer, o.state, o.waiter, o.barista, " +
+            "o.discount, o.total, o.create_time, o.update_time, c.name " +
+            "from t_order o " +
+            "left join t_order_coffee oc on oc.coffee_order_id = o.id " +
+            "left join t_coffee c on c.id = oc.items_id";
+    private static final int FLUSH_INTERVAL = 1000;
+    private static final String MYSQL = "MySQL";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private OrderProperties orderProperties;
+
+    public long exportNdjson(Date from, Date to, OutputStream out) throws IOException {
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+        generator.setPrettyPrinter(new MinimalPrettyPrinter("\n"));
+        long count = export(from, to, row -> {
+            generator.writeStartObject();
+            generator.writeNumberField("id", row.id);
+            generator.writeStringField("customer", row.customer);
+            generator.writeStringField("state", row.state);
+            generator.writeStringField("waiter", row.waiter);
+            generator.writeStringField("barista", row.barista);
+            if (row.discount != null) {
+                generator.writeNumberField("discount", row.discount);
+            }
+            generator.writeNumberField("total", row.total);
+            generator.writeArrayFieldStart("items");
+            for (String item : row.items) {
+                generator.writeString(item);
+            }
+            generator.writeEndArray();
+            generator.writeStringField("createTime", format(row.createTime));
+            generator.writeStringField("updateTime", format(row.updateTime));
+            generator.writeEndObject();
+        }, generator::flush);
+        generator.writeStartObject();
+        generator.writeNumberField("count", count);
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+        generator.close();
+        return count;
+    }
+
+    public long exportCsv(Date from, Date to, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        writer.write("id,customer,state,waiter,barista,discount,total,items,create_time,update_time\n");
+        long count = export(from, to, row -> {
+            writer.write(String.valueOf(row.id));
+            writer.write(',');
+            writer.write(csv(row.customer));
+            writer.write(',');
+            writer.write(csv(row.state));
+            writer.write(',');
+            writer.write(csv(row.waiter));
+            writer.write(',');
+            writer.write(csv(row.barista));
+            writer.write(',');
+            writer.write(row.discount == null ? "" : String.valueOf(row.discount));
+            writer.write(',');
+            writer.write(row.total == null ? "" : row.total.toPlainString());
+            writer.write(',');
+            writer.write(csv(String.join("|", row.items)));
+            writer.write(',');
+            writer.write(csv(format(row.createTime)));
+            writer.write(',');
+            writer.write(csv(format(row.updateTime)));
+            writer.write('\n');
+        }, writer::flush);
+        writer.write("#count=" + count + "\n");
+        writer.flush();
+        return count;
+    }
+
+    private long export(Date from, Date to, RowWriter rowWriter, Flusher flusher) throws IOException {
+        StringBuilder sql = new StringBuilder(SQL).append(" where 1 = 1");
+        List<Object> params = new ArrayList<>();
+        if (from != null) {
+            sql.append(" and o.create_time >= ?");
+            params.add(new Timestamp(from.getTime()));
+        }
+        if (to != null) {
+            sql.append(" and o.create_time < ?");
+            params.add(new Timestamp(to.getTime()));
+        }
+        sql.append(" order by o.id");
+
+        PreparedStatementCreator creator = con -> {
+            PreparedStatement ps = con.prepareStatement(sql.toString(),
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            // Connector/J 默认一次读完整个结果集，只有 Integer.MIN_VALUE 才会逐行读取
+            ps.setFetchSize(MYSQL.equals(con.getMetaData().getDatabaseProductName()) ?
+                    Integer.MIN_VALUE : orderProperties.getExportFetchSize());
+            for (int i = 0; i < params.size(); i++) {
+                ps.setObject(i + 1, params.get(i));
+            }
+            return ps;
+        };
+
+        // 同一订单的多行（每个 item 一行）是连续的，换订单时输出上一个
+        ExportRow row = new ExportRow();
+        long[] count = {0};
+        try {
+            jdbcTemplate.query(creator, rs -> {
+                long id = rs.getLong("id");
+                if (row.id != null && row.id != id) {
+                    write(row, rowWriter, flusher, count);
+                }
+                if (row.id == null || row.id != id) {
+                    row.read(id, rs);
+                }
+                String item = rs.getString("name");
+                if (item != null) {
+                    row.items.add(item);
+                }
+            });
+            if (row.id != null) {
+                write(row, rowWriter, flusher, count);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        log.info("Exported {} orders.", count[0]);
+        return count[0];
+    }
+
+    private void write(ExportRow row, RowWriter rowWriter, Flusher flusher, long[] count) {
+        try {
+            rowWriter.write(row);
+            count[0]++;
+            // 首行立即刷出，之后按固定间隔刷新
+            if (count[0] == 1 || count[0] % FLUSH_INTERVAL == 0) {
+                flusher.flush();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private String format(Date date) {
+        return date == null ? null : date.toInstant().toString();
+    }
+
+    private String csv(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    private interface RowWriter {
+        void write(ExportRow row) throws IOException;
+    }
+
+    private interface Flusher {
+        void flush() throws IOException;
+    }
+
+    private static class ExportRow {
+        private Long id;
+        private String customer;
+        private String state;
+        private String waiter;
+        private String barista;
+        private Integer discount;
+        private BigDecimal total;
+        private Date createTime;
+        private Date updateTime;
+        private final List<String> items = new ArrayList<>();
+
+        void read(long id, ResultSet rs) throws SQLException {
+            this.id = id;
+            customer = rs.getString("customer");
+            int ordinal = rs.getInt("state");
+            state = rs.wasNull() ? null : OrderState.values()[ordinal].name();
+            waiter = rs.getString("waiter");
+            barista = rs.getString("barista");
+            int d = rs.getInt("discount");
+            discount = rs.wasNull() ? null : d;
+            long t = rs.getLong("total");
+            total = rs.wasNull() ? null : Money.ofMinor(CurrencyUnit.of("CNY"), t).getAmount();
+            createTime = rs.getTimestamp("create_time");
+            updateTime = rs.getTimestamp("update_time");
+            items.clear();
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package geektime.spring.springbucks.waiter.support;
+
+import org.apache.coyote.http2.Http2Protocol;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * server.http2.enabled 只对 TLS 生效，这里为明文端口加上 HTTP/2（h2c），
+ * 同时支持 Upgrade 和 Prior Knowledge 两种方式，HTTP/1.1 客户端不受影响
+ */
+@Configuration
+@ConditionalOnProperty(name = "server.h2c.enabled", havingValue = "true")
+public class H2cConfig {
+    @Value("${server.h2c.max-concurrent-streams:200}")
+    private int maxConcurrentStreams;
+
+    @Bean
+    public WebServerFactoryCustomizer<TomcatServletWebServerFactory> h2cCustomizer() {
+        return factory -> factory.addConnectorCustomizers(connector -> {
+            Http2Protocol http2Protocol = new Http2Protocol();
+            // 默认每个连接只同时执行 20 个流，多路复用时会成为瓶颈
+            http2Protocol.setMaxConcurrentStreams(maxConcurrentStreams);
+            http2Protocol.setMaxConcurrentStreamExecution(maxConcurrentStreams);
+            connector.addUpgradeProtocol(http2Protocol);
+        });
+    }
+}
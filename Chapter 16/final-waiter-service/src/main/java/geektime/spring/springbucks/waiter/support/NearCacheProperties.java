@@ -0,0 +1,16 @@
+package geektime.spring.springbucks.waiter.support;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@ConfigurationProperties("cache.near")
+@Data
+@Component
+public class NearCacheProperties {
+    private long maximumSize = 1000;
+    private Duration timeToLive = Duration.ofSeconds(10);
+    private String invalidationTopic = "springbucks:cache-invalidation";
+}
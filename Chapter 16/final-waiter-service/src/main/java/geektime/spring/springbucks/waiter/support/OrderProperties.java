@@ -12,4 +12,5 @@ import org.springframework.stereotype.Component;
 public class OrderProperties {
     private Integer discount = 100;
     private String waiterPrefix = "springbucks-";
+    private Integer exportFetchSize = 1000;
 }
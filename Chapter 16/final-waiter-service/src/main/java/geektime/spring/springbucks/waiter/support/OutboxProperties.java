@@ -0,0 +1,26 @@
+package geektime.spring.springbucks.waiter.support;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@ConfigurationProperties("outbox")
+@Data
+@Component
+public class OutboxProperties {
+    private int batchSize = 200;
+    private long confirmTimeout = 5000;
+    /**
+     * 认领超过这个时间（毫秒）仍未删除，视为认领的实例已退出，其他实例可以重新认领
+     */
+    private long claimTimeout = 60000;
+    /**
+     * rabbit 直接通过 RabbitTemplate 投递并等待 Confirm；
+     * binding 通过 Spring Cloud Stream 的输出通道发送，用于没有 RabbitMQ 的环境
+     */
+    private Publisher publisher = Publisher.RABBIT;
+
+    public enum Publisher {
+        RABBIT, BINDING
+    }
+}
@@ -0,0 +1,24 @@
+package geektime.spring.springbucks.waiter.support;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+@ConfigurationProperties("performance")
+@Data
+@Component
+public class PerformanceProperties {
+    private boolean metricsEnabled = true;
+    private boolean logEnabled = false;
+    /**
+     * 日志采样比例，0~1
+     */
+    private double logSampleRate = 0.01;
+    private double[] percentiles = {0.5, 0.95, 0.99};
+    private List<Duration> sla = Arrays.asList(Duration.ofMillis(50),
+            Duration.ofMillis(100), Duration.ofMillis(200), Duration.ofMillis(500));
+}
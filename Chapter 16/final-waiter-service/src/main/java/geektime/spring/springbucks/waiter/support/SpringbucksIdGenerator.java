@@ -0,0 +1,131 @@
+package geektime.spring.springbucks.waiter.support;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.hibernate.HibernateException;
+import org.hibernate.MappingException;
+import org.hibernate.boot.model.relational.Database;
+import org.hibernate.boot.model.relational.ExportableProducer;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.config.spi.StandardConverters;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.Configurable;
+import org.hibernate.id.IdentifierGenerator;
+import org.hibernate.id.PersistentIdentifierGenerator;
+import org.hibernate.id.enhanced.TableGenerator;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+import java.io.Serializable;
+import java.util.Properties;
+
+/**
+ * 可切换的主键生成策略，IDENTITY 会让 Hibernate 关闭插入批处理，这里提供两种替代方案：
+ * <ul>
+ *     <li>table：基于 t_id_sequence 表的 pooled-lo 号段，MySQL 与 H2 均可用，多实例下天然不重复</li>
+ *     <li>snowflake：进程内按时间递增的 64 位 ID，各实例必须配置不同的 worker-id，未配置时启动失败</li>
+ * </ul>
+ * 通过 spring.jpa.properties.springbucks.id.* 配置
+ */
+public class SpringbucksIdGenerator implements IdentifierGenerator, Configurable, ExportableProducer {
+    public static final String STRATEGY = "springbucks.id.strategy";
+    public static final String INCREMENT_SIZE = "springbucks.id.increment-size";
+    public static final String INITIAL_VALUE = "springbucks.id.initial-value";
+    public static final String WORKER_ID = "springbucks.id.worker-id";
+
+    private IdentifierGenerator delegate;
+
+    @Override
+    public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) throws MappingException {
+        ConfigurationService config = serviceRegistry.getService(ConfigurationService.class);
+        String strategy = config.getSetting(STRATEGY, StandardConverters.STRING, "table");
+        if ("snowflake".equalsIgnoreCase(strategy)) {
+            String workerId = config.getSetting(WORKER_ID, StandardConverters.STRING, null);
+            // 随机的 worker-id 在多实例间可能相同，生成重复的主键，必须显式配置
+            if (!NumberUtils.isDigits(StringUtils.trimToEmpty(workerId))) {
+                throw new MappingException(WORKER_ID + " must be set to a number between 0 and "
+                        + SnowflakeGenerator.MAX_WORKER_ID + " for the snowflake strategy, but was: " + workerId);
+            }
+            delegate = new SnowflakeGenerator(Long.parseLong(workerId.trim()));
+        } else if ("table".equalsIgnoreCase(strategy)) {
+            Properties tableParams = new Properties();
+            tableParams.putAll(params);
+            tableParams.setProperty(TableGenerator.TABLE_PARAM, "t_id_sequence");
+            tableParams.setProperty(TableGenerator.SEGMENT_VALUE_PARAM,
+                    params.getProperty(PersistentIdentifierGenerator.TABLE));
+            tableParams.setProperty(TableGenerator.INCREMENT_PARAM,
+                    config.getSetting(INCREMENT_SIZE, StandardConverters.STRING, "50"));
+            tableParams.setProperty(TableGenerator.INITIAL_PARAM,
+                    config.getSetting(INITIAL_VALUE, StandardConverters.STRING, "1000"));
+            tableParams.setProperty(TableGenerator.OPT_PARAM, "pooled-lo");
+            TableGenerator generator = new TableGenerator();
+            generator.configure(type, tableParams, serviceRegistry);
+            delegate = generator;
+        } else {
+            throw new MappingException("Unknown id strategy: " + strategy);
+        }
+    }
+
+    @Override
+    public void registerExportables(Database database) {
+        if (delegate instanceof ExportableProducer) {
+            ((ExportableProducer) delegate).registerExportables(database);
+        }
+    }
+
+    @Override
+    public Serializable generate(SharedSessionContractImplementor session, Object object) throws HibernateException {
+        return delegate.generate(session, object);
+    }
+
+    /**
+     * 41 位毫秒时间戳 + 10 位 worker + 12 位序列号
+     */
+    static class SnowflakeGenerator implements IdentifierGenerator {
+        static final long EPOCH = 1546300800000L; // 2019-01-01 00:00:00 UTC
+        static final long WORKER_BITS = 10L;
+        static final long SEQUENCE_BITS = 12L;
+        static final long MAX_WORKER_ID = ~(-1L << WORKER_BITS);
+        static final long SEQUENCE_MASK = ~(-1L << SEQUENCE_BITS);
+
+        private final long workerId;
+        private long lastTimestamp = -1L;
+        private long sequence = 0L;
+
+        SnowflakeGenerator(long workerId) {
+            if (workerId < 0 || workerId > MAX_WORKER_ID) {
+                throw new MappingException("Worker id must be between 0 and " + MAX_WORKER_ID);
+            }
+            this.workerId = workerId;
+        }
+
+        @Override
+        public synchronized Serializable generate(SharedSessionContractImplementor session, Object object) {
+            long timestamp = System.currentTimeMillis();
+            if (timestamp < lastTimestamp) {
+                // 时钟回拨时沿用上一个时间戳，靠序列号继续递增
+                timestamp = lastTimestamp;
+            }
+            if (timestamp == lastTimestamp) {
+                sequence = (sequence + 1) & SEQUENCE_MASK;
+                if (sequence == 0) {
+                    timestamp = waitNextMillis(lastTimestamp);
+                }
+            } else {
+                sequence = 0L;
+            }
+            lastTimestamp = timestamp;
+            return ((timestamp - EPOCH) << (WORKER_BITS + SEQUENCE_BITS))
+                    | (workerId << SEQUENCE_BITS)
+                    | sequence;
+        }
+
+        private long waitNextMillis(long last) {
+            long timestamp = System.currentTimeMillis();
+            while (timestamp <= last) {
+                timestamp = System.currentTimeMillis();
+            }
+            return timestamp;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package geektime.spring.springbucks.waiter.support;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+import java.util.concurrent.Callable;
+import java.util.function.Consumer;
+
+/**
+ * 进程内 Caffeine 作为一级缓存，Redis 作为二级缓存
+ * 本地修改时通过 invalidation 回调通知其他实例清理一级缓存
+ * 一级缓存命中时所有调用方拿到的是同一个对象，不会像 Redis 那样每次反序列化出新副本，
+ * 调用方不能修改缓存返回的对象（包括 List 和其中的实体），需要修改时先复制
+ */
+public class TwoLevelCache implements Cache {
+    private final String name;
+    private final com.github.benmanes.caffeine.cache.Cache<Object, Object> local;
+    private final Cache remote;
+    private final Consumer<String> invalidation;
+
+    private final Counter l1Hit;
+    private final Counter l1Miss;
+    private final Counter l2Hit;
+    private final Counter l2Miss;
+
+    public TwoLevelCache(String name, com.github.benmanes.caffeine.cache.Cache<Object, Object> local,
+                         Cache remote, Consumer<String> invalidation, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.local = local;
+        this.remote = remote;
+        this.invalidation = invalidation;
+        this.l1Hit = counter(meterRegistry, "l1", "hit");
+        this.l1Miss = counter(meterRegistry, "l1", "miss");
+        this.l2Hit = counter(meterRegistry, "l2", "hit");
+        this.l2Miss = counter(meterRegistry, "l2", "miss");
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return remote.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        Object value = local.getIfPresent(key);
+        if (value != null) {
+            l1Hit.increment();
+            return new SimpleValueWrapper(value);
+        }
+        l1Miss.increment();
+        ValueWrapper wrapper = remote.get(key);
+        if (wrapper == null) {
+            l2Miss.increment();
+        } else {
+            l2Hit.increment();
+            if (wrapper.get() != null) {
+                local.put(key, wrapper.get());
+            }
+        }
+        return wrapper;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper wrapper = get(key);
+        Object value = wrapper == null ? null : wrapper.get();
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: " + value);
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        Object cached = local.getIfPresent(key);
+        if (cached != null) {
+            l1Hit.increment();
+            return (T) cached;
+        }
+        l1Miss.increment();
+        // 二级缓存的查询和加载在同一次调用里完成，是否调用了 valueLoader 决定记为命中还是未命中
+        boolean[] loaded = {false};
+        T value;
+        try {
+            value = remote.get(key, () -> {
+                loaded[0] = true;
+                return valueLoader.call();
+            });
+        } finally {
+            (loaded[0] ? l2Miss : l2Hit).increment();
+        }
+        if (value != null) {
+            local.put(key, value);
+        }
+        return value;
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        remote.put(key, value);
+        if (value != null) {
+            local.put(key, value);
+        }
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        ValueWrapper existing = remote.putIfAbsent(key, value);
+        if (existing == null && value != null) {
+            local.put(key, value);
+        }
+        return existing;
+    }
+
+    @Override
+    public void evict(Object key) {
+        remote.evict(key);
+        local.invalidate(key);
+        invalidation.accept(name);
+    }
+
+    @Override
+    public void clear() {
+        remote.clear();
+        local.invalidateAll();
+        invalidation.accept(name);
+    }
+
+    /**
+     * 收到其他实例的失效通知时只清理一级缓存
+     */
+    public void clearLocal() {
+        local.invalidateAll();
+    }
+
+    private Counter counter(MeterRegistry meterRegistry, String tier, String result) {
+        return Counter.builder("cache.near.gets")
+                .tag("cache", name)
+                .tag("tier", tier)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
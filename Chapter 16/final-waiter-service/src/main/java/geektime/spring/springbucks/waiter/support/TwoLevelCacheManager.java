@@ -0,0 +1,83 @@
+package geektime.spring.springbucks.waiter.support;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 为 Redis 中的每个缓存包装一层进程内缓存，失效消息通过 Redis pub/sub 广播
+ * 消息格式为 实例ID:缓存名
+ */
+@Slf4j
+public class TwoLevelCacheManager implements CacheManager, MessageListener {
+    private final String instanceId = UUID.randomUUID().toString();
+    private final ConcurrentMap<String, TwoLevelCache> caches = new ConcurrentHashMap<>();
+    private final CacheManager remote;
+    private final StringRedisTemplate redisTemplate;
+    private final NearCacheProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    public TwoLevelCacheManager(CacheManager remote, StringRedisTemplate redisTemplate,
+                                NearCacheProperties properties, MeterRegistry meterRegistry) {
+        this.remote = remote;
+        this.redisTemplate = redisTemplate;
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        return caches.computeIfAbsent(name, this::createCache);
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return remote.getCacheNames();
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        String origin = StringUtils.substringBefore(body, ":");
+        String name = StringUtils.substringAfter(body, ":");
+        if (instanceId.equals(origin)) {
+            return;
+        }
+        TwoLevelCache cache = caches.get(name);
+        if (cache != null) {
+            log.info("Clear local cache {} by invalidation from {}", name, origin);
+            cache.clearLocal();
+        }
+    }
+
+    private TwoLevelCache createCache(String name) {
+        return new TwoLevelCache(name,
+                Caffeine.newBuilder()
+                        .maximumSize(properties.getMaximumSize())
+                        .expireAfterWrite(properties.getTimeToLive().toMillis(), TimeUnit.MILLISECONDS)
+                        .build(),
+                remote.getCache(name), this::publishInvalidation, meterRegistry);
+    }
+
+    private void publishInvalidation(String name) {
+        try {
+            redisTemplate.convertAndSend(properties.getInvalidationTopic(), instanceId + ":" + name);
+        } catch (Exception e) {
+            // 通知失败时其他实例依赖一级缓存的 TTL 过期
+            log.warn("Can not publish invalidation of cache {}: {}", name, e.getMessage());
+        }
+    }
+}
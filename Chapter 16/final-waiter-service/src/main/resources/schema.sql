@@ -1,9 +1,12 @@
-# 注意 MySQL 与 H2 的语法差异
-# H2: drop table tbl if exists;
-# MySQL: drop table if exists tbl;
+-- 注意 MySQL 与 H2 的语法差异
+-- H2: drop table tbl if exists;
+-- MySQL: drop table if exists tbl;
 drop table if exists t_coffee;
 drop table if exists t_order;
 drop table if exists t_order_coffee;
+drop table if exists t_id_sequence;
+drop table if exists t_outbox;
+drop table if exists t_processed_message;
 
 create table t_coffee (
     id bigint auto_increment,
@@ -31,3 +34,39 @@ create table t_order_coffee (
     coffee_order_id bigint not null,
     items_id bigint not null
 );
+
+-- 订单查询按 (create_time, id) 做 Keyset 分页，各过滤条件放在索引最左侧
+create index idx_order_create_time on t_order (create_time, id);
+create index idx_order_customer on t_order (customer, create_time, id);
+create index idx_order_state on t_order (state, create_time, id);
+create index idx_order_waiter on t_order (waiter, create_time, id);
+create index idx_order_barista on t_order (barista, create_time, id);
+create index idx_order_coffee_order on t_order_coffee (coffee_order_id);
+
+-- SpringbucksIdGenerator 的 table 策略使用的号段表
+create table t_id_sequence (
+    sequence_name varchar(255) not null,
+    next_val bigint,
+    primary key (sequence_name)
+);
+
+-- 待投递给 barista-service 的事件，与订单状态在同一事务中写入
+create table t_outbox (
+    id bigint not null,
+    create_time timestamp,
+    update_time timestamp,
+    destination varchar(255),
+    payload varchar(4000),
+    claimed_by varchar(64),
+    claimed_at timestamp null,
+    primary key (id)
+);
+create index idx_outbox_claimed_by on t_outbox (claimed_by);
+
+-- barista-service 已处理消息的去重表，按 processed_at 定期清理
+create table t_processed_message (
+    message_key varchar(128) not null,
+    processed_at timestamp,
+    primary key (message_key)
+);
+create index idx_processed_message_time on t_processed_message (processed_at);
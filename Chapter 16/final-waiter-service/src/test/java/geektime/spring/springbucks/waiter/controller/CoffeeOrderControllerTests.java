@@ -0,0 +1,126 @@
+package geektime.spring.springbucks.waiter.controller;
+
+import geektime.spring.springbucks.waiter.model.Coffee;
+import geektime.spring.springbucks.waiter.model.CoffeeOrder;
+import geektime.spring.springbucks.waiter.model.OrderState;
+import geektime.spring.springbucks.waiter.repository.CoffeeOrderRepository;
+import geektime.spring.springbucks.waiter.repository.CoffeeRepository;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.joda.money.CurrencyUnit;
+import org.joda.money.Money;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * GET /order/{id} 从查询到 Jackson 序列化（包括 Hibernate5Module）一共只执行一条 SQL；
+ * POST /order/batch 对不在菜单上的咖啡、空订单返回 400，整批都不写入
+ * 使用 H2 代替 MySQL，关闭 Consul、Zipkin，Redis 缓存换成本地缓存
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "spring.cloud.bootstrap.enabled=false",
+        "spring.cloud.consul.enabled=false",
+        "spring.zipkin.enabled=false",
+        "spring.sleuth.enabled=false",
+        "spring.cache.type=simple",
+        "server.h2c.enabled=false",
+        "outbox.relay-interval=3600000",
+        "resilience4j.ratelimiter.limiters.order.limit-for-period=1000",
+        "spring.datasource.url=jdbc:h2:mem:order-controller;MODE=MySQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+@AutoConfigureMockMvc
+public class CoffeeOrderControllerTests {
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private CoffeeRepository coffeeRepository;
+    @Autowired
+    private CoffeeOrderRepository orderRepository;
+
+    @Test
+    public void getOrderExecutesOneStatement() throws Exception {
+        List<Coffee> coffee = coffeeRepository.findByNameInOrderById(Arrays.asList("espresso", "latte"));
+        CoffeeOrder saved = orderRepository.save(CoffeeOrder.builder()
+                .customer("Li Lei")
+                .items(new ArrayList<>(coffee))
+                .discount(100)
+                .total(Money.of(CurrencyUnit.of("CNY"), 45))
+                .state(OrderState.INIT)
+                .build());
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        mockMvc.perform(get("/order/{id}", saved.getId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id").value(saved.getId()))
+                .andExpect(jsonPath("$.items[*].name", containsInAnyOrder("espresso", "latte")));
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    public void batchWithUnknownCoffeeIsRejected() throws Exception {
+        long count = orderRepository.count();
+        mockMvc.perform(post("/order/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[{\"customer\":\"Li Lei\",\"items\":[\"espresso\"]}," +
+                        "{\"customer\":\"Han Meimei\",\"items\":[\"latte\",\"flat white\",\"cold brew\"]}]"))
+                .andExpect(status().isBadRequest())
+                .andExpect(status().reason(allOf(containsString("flat white"), containsString("cold brew"))));
+        assertEquals(count, orderRepository.count());
+    }
+
+    @Test
+    public void emptyBatchIsRejected() throws Exception {
+        mockMvc.perform(post("/order/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[]"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void orderWithoutItemsIsRejected() throws Exception {
+        long count = orderRepository.count();
+        mockMvc.perform(post("/order/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[{\"customer\":\"Li Lei\",\"items\":[\"espresso\"]},{\"customer\":\"Han Meimei\",\"items\":[]}]"))
+                .andExpect(status().isBadRequest())
+                .andExpect(status().reason(containsString("Order 1")));
+        assertEquals(count, orderRepository.count());
+    }
+
+    @Test
+    public void batchIsCreated() throws Exception {
+        mockMvc.perform(post("/order/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[{\"customer\":\"Li Lei\",\"items\":[\"espresso\",\"latte\"]}]"))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$[0].items[*].name", containsInAnyOrder("espresso", "latte")));
+    }
+}
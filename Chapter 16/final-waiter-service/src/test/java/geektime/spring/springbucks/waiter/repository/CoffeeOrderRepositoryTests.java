@@ -0,0 +1,73 @@
+package geektime.spring.springbucks.waiter.repository;
+
+import geektime.spring.springbucks.waiter.model.Coffee;
+import geektime.spring.springbucks.waiter.model.CoffeeOrder;
+import geektime.spring.springbucks.waiter.model.OrderState;
+import org.hibernate.Hibernate;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.joda.money.CurrencyUnit;
+import org.joda.money.Money;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(SpringRunner.class)
+@DataJpaTest(properties = {
+        "spring.cloud.bootstrap.enabled=false",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+public class CoffeeOrderRepositoryTests {
+    @Configuration
+    @EntityScan(basePackageClasses = CoffeeOrder.class)
+    @EnableJpaRepositories(basePackageClasses = CoffeeOrderRepository.class)
+    static class Config {
+    }
+
+    @Autowired
+    private EntityManager entityManager;
+    @Autowired
+    private CoffeeRepository coffeeRepository;
+    @Autowired
+    private CoffeeOrderRepository orderRepository;
+
+    @Test
+    public void getOrderLoadsItemsInOneStatement() {
+        List<Coffee> coffee = coffeeRepository.findByNameInOrderById(Arrays.asList("espresso", "latte"));
+        CoffeeOrder saved = orderRepository.save(CoffeeOrder.builder()
+                .customer("Li Lei")
+                .items(new ArrayList<>(coffee))
+                .discount(100)
+                .total(Money.of(CurrencyUnit.of("CNY"), 45))
+                .state(OrderState.INIT)
+                .build());
+        entityManager.flush();
+        entityManager.clear();
+
+        Statistics statistics = entityManager.getEntityManagerFactory()
+                .unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        CoffeeOrder order = orderRepository.findWithItemsById(saved.getId()).get();
+        assertTrue(Hibernate.isInitialized(order.getItems()));
+        assertEquals(2, order.getItems().size());
+        assertEquals(new HashSet<>(Arrays.asList("espresso", "latte")),
+                order.getItems().stream().map(Coffee::getName).collect(Collectors.toSet()));
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+}
@@ -0,0 +1,91 @@
+package geektime.spring.springbucks.waiter.repository;
+
+import geektime.spring.springbucks.waiter.model.Coffee;
+import geektime.spring.springbucks.waiter.model.CoffeeOrder;
+import geektime.spring.springbucks.waiter.model.OrderState;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.joda.money.CurrencyUnit;
+import org.joda.money.Money;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 对比 T_ORDER / T_ORDER_COFFEE 在逐条写入与 JDBC 批量写入下的语句数和吞吐量
+ */
+@RunWith(SpringRunner.class)
+@DataJpaTest(properties = {
+        "spring.cloud.bootstrap.enabled=false",
+        "spring.jpa.show-sql=false",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+@Slf4j
+public class OrderInsertBenchmarkTests {
+    private static final int ORDERS = 2000;
+
+    @Configuration
+    @EntityScan(basePackageClasses = CoffeeOrder.class)
+    @EnableJpaRepositories(basePackageClasses = CoffeeOrderRepository.class)
+    static class Config {
+    }
+
+    @Autowired
+    private EntityManager entityManager;
+    @Autowired
+    private CoffeeRepository coffeeRepository;
+    @Autowired
+    private CoffeeOrderRepository orderRepository;
+
+    @Test
+    public void batchInsertUsesFewerStatements() {
+        List<Coffee> coffee = coffeeRepository.findByNameInOrderById(Arrays.asList("espresso", "latte"));
+        insert(coffee, 1); // 预热
+
+        long[] single = insert(coffee, 1);
+        long[] batched = insert(coffee, 50);
+        log.info("batch_size=1: {} statements, {} orders/s", single[0], ORDERS * 1000L / Math.max(single[1], 1));
+        log.info("batch_size=50: {} statements, {} orders/s", batched[0], ORDERS * 1000L / Math.max(batched[1], 1));
+
+        assertTrue(batched[0] * 10 < single[0]);
+    }
+
+    private long[] insert(List<Coffee> coffee, int batchSize) {
+        Session session = entityManager.unwrap(Session.class);
+        session.setJdbcBatchSize(batchSize);
+        Statistics statistics = entityManager.getEntityManagerFactory()
+                .unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        List<CoffeeOrder> orders = new ArrayList<>(ORDERS);
+        for (int i = 0; i < ORDERS; i++) {
+            orders.add(CoffeeOrder.builder()
+                    .customer("benchmark-" + i)
+                    .items(new ArrayList<>(coffee))
+                    .discount(100)
+                    .total(Money.of(CurrencyUnit.of("CNY"), 45))
+                    .state(OrderState.INIT)
+                    .build());
+        }
+        long start = System.currentTimeMillis();
+        orderRepository.saveAll(orders);
+        entityManager.flush();
+        long elapsed = System.currentTimeMillis() - start;
+        entityManager.clear();
+        return new long[] { statistics.getPrepareStatementCount(), elapsed };
+    }
+}
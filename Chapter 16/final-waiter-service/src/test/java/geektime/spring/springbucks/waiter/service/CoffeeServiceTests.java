@@ -0,0 +1,79 @@
+package geektime.spring.springbucks.waiter.service;
+
+import geektime.spring.springbucks.waiter.controller.response.ImportSummary;
+import geektime.spring.springbucks.waiter.model.Coffee;
+import geektime.spring.springbucks.waiter.repository.CoffeeRepository;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * 导入在 CoffeeService 自己的事务里提交，测试方法本身不开启事务
+ * 超过 varchar(255) 的名称会让所在分块保存失败，逐行重试后只拒绝这一行
+ */
+@RunWith(SpringRunner.class)
+@DataJpaTest(properties = {
+        "spring.cloud.bootstrap.enabled=false",
+        "coffee.import-chunk-size=3"
+})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class CoffeeServiceTests {
+    @Configuration
+    @EntityScan(basePackageClasses = Coffee.class)
+    @EnableJpaRepositories(basePackageClasses = CoffeeRepository.class)
+    @Import(CoffeeService.class)
+    static class Config {
+    }
+
+    @Autowired
+    private CoffeeService coffeeService;
+    @Autowired
+    private CoffeeRepository coffeeRepository;
+
+    @Test
+    public void failedChunkIsRetriedLineByLine() throws Exception {
+        String tooLong = StringUtils.repeat("x", 300);
+        String file = String.join("\n",
+                "import-americano 20",
+                "import-flat-white 25",
+                tooLong + " 30",
+                "import-cortado 28",
+                "import-ristretto abc",
+                "import-affogato 32");
+
+        ImportSummary summary = coffeeService.importCoffee(
+                new ByteArrayInputStream(file.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(6, summary.getLines());
+        assertEquals(4, summary.getImported());
+        assertEquals(2, summary.getRejected());
+        List<Long> rejected = summary.getRejectedLines().stream()
+                .map(ImportSummary.RejectedLine::getLine)
+                .sorted()
+                .collect(Collectors.toList());
+        assertEquals(Arrays.asList(3L, 5L), rejected);
+        for (String name : Arrays.asList("import-americano", "import-flat-white", "import-cortado", "import-affogato")) {
+            assertNotNull(name, coffeeRepository.findByName(name));
+        }
+        assertNull(coffeeRepository.findByName(tooLong));
+    }
+}
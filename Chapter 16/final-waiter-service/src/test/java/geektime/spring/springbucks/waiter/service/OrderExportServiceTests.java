@@ -0,0 +1,133 @@
+package geektime.spring.springbucks.waiter.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import geektime.spring.springbucks.waiter.support.OrderProperties;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 用 H2 执行导出语句，检查多个 item 合并为一条记录、CSV 转义、时间过滤以及末尾的记录数
+ */
+@RunWith(SpringRunner.class)
+@JdbcTest(properties = "spring.cloud.bootstrap.enabled=false")
+public class OrderExportServiceTests {
+    @Configuration
+    @Import(OrderExportService.class)
+    static class Config {
+        @Bean
+        public ObjectMapper objectMapper() {
+            return new ObjectMapper();
+        }
+
+        @Bean
+        public OrderProperties orderProperties() {
+            return new OrderProperties();
+        }
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private OrderExportService exportService;
+
+    @Before
+    public void setUp() {
+        insertOrder(1L, "Han, \"Meimei\"", "2019-04-01T10:00:00Z", "espresso", "latte");
+        insertOrder(2L, "Li Lei", "2019-04-02T10:00:00Z", "mocha");
+        insertOrder(3L, "Lucy", "2019-04-03T10:00:00Z");
+    }
+
+    @Test
+    public void ndjsonCollapsesItemsIntoOneRecord() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(3, exportService.exportNdjson(null, null, out));
+
+        List<String> lines = lines(out);
+        assertEquals(4, lines.size());
+        JsonNode first = objectMapper.readTree(lines.get(0));
+        assertEquals(1, first.get("id").asLong());
+        assertEquals("Han, \"Meimei\"", first.get("customer").asText());
+        assertEquals(2, first.get("items").size());
+        assertEquals("espresso", first.get("items").get(0).asText());
+        assertEquals("latte", first.get("items").get(1).asText());
+        assertEquals(0, objectMapper.readTree(lines.get(2)).get("items").size());
+        assertEquals(3, objectMapper.readTree(lines.get(3)).get("count").asLong());
+    }
+
+    @Test
+    public void csvQuotesSpecialCharacters() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(3, exportService.exportCsv(null, null, out));
+
+        List<String> lines = lines(out);
+        assertEquals(5, lines.size());
+        assertEquals("id,customer,state,waiter,barista,discount,total,items,create_time,update_time",
+                lines.get(0));
+        assertEquals("1,\"Han, \"\"Meimei\"\"\",PAID,springbucks-1,,100,45.00,espresso|latte,"
+                + "2019-04-01T10:00:00Z,2019-04-01T10:00:00Z", lines.get(1));
+        assertEquals("#count=3", lines.get(4));
+    }
+
+    @Test
+    public void fromIsInclusiveAndToIsExclusive() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long count = exportService.exportNdjson(date("2019-04-02T10:00:00Z"), date("2019-04-03T10:00:00Z"), out);
+
+        assertEquals(1, count);
+        List<String> lines = lines(out);
+        assertEquals(2, lines.size());
+        assertEquals(2, objectMapper.readTree(lines.get(0)).get("id").asLong());
+        assertEquals(1, objectMapper.readTree(lines.get(1)).get("count").asLong());
+    }
+
+    @Test
+    public void emptyExportStillEndsWithCount() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(0, exportService.exportCsv(date("2020-01-01T00:00:00Z"), null, out));
+
+        List<String> lines = lines(out);
+        assertEquals(2, lines.size());
+        assertEquals("#count=0", lines.get(1));
+    }
+
+    private void insertOrder(Long id, String customer, String createTime, String... items) {
+        Timestamp time = new Timestamp(date(createTime).getTime());
+        jdbcTemplate.update("insert into t_order (id, create_time, update_time, customer, waiter, " +
+                "discount, total, state) values (?, ?, ?, ?, 'springbucks-1', 100, 4500, 1)",
+                id, time, time, customer);
+        for (String item : items) {
+            jdbcTemplate.update("insert into t_order_coffee (coffee_order_id, items_id) " +
+                    "select ?, id from t_coffee where name = ?", id, item);
+        }
+    }
+
+    private Date date(String iso) {
+        return Date.from(Instant.parse(iso));
+    }
+
+    private List<String> lines(ByteArrayOutputStream out) {
+        String text = new String(out.toByteArray(), StandardCharsets.UTF_8);
+        return Arrays.asList(text.split("\n"));
+    }
+}
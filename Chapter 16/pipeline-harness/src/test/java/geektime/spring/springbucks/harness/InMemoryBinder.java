@@ -0,0 +1,56 @@
+package geektime.spring.springbucks.harness;
+
+import org.springframework.cloud.stream.binder.Binder;
+import org.springframework.cloud.stream.binder.Binding;
+import org.springframework.cloud.stream.binder.ConsumerProperties;
+import org.springframework.cloud.stream.binder.ProducerProperties;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.SubscribableChannel;
+
+/**
+ * 把 Binding 的输入输出通道接到 InMemoryBroker 上，让多个服务在同一个 JVM 内互相收发消息
+ */
+public class InMemoryBinder implements Binder<MessageChannel, ConsumerProperties, ProducerProperties> {
+    private final InMemoryBroker broker;
+
+    public InMemoryBinder(InMemoryBroker broker) {
+        this.broker = broker;
+    }
+
+    @Override
+    public Binding<MessageChannel> bindConsumer(String name, String group, MessageChannel inputChannel,
+                                                ConsumerProperties consumerProperties) {
+        Runnable unsubscribe = broker.subscribe(name, group, consumerProperties.getConcurrency(),
+                inputChannel::send);
+        return new InMemoryBinding(name, unsubscribe);
+    }
+
+    @Override
+    public Binding<MessageChannel> bindProducer(String name, MessageChannel outboundChannel,
+                                                ProducerProperties producerProperties) {
+        SubscribableChannel channel = (SubscribableChannel) outboundChannel;
+        MessageHandler handler = message -> broker.publish(name, message);
+        channel.subscribe(handler);
+        return new InMemoryBinding(name, () -> channel.unsubscribe(handler));
+    }
+
+    private static class InMemoryBinding implements Binding<MessageChannel> {
+        private final String name;
+        private final Runnable unbind;
+
+        InMemoryBinding(String name, Runnable unbind) {
+            this.name = name;
+            this.unbind = unbind;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public void unbind() {
+            unbind.run();
+        }
+    }
+}
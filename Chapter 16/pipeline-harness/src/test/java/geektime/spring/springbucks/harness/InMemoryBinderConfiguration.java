@@ -0,0 +1,15 @@
+package geektime.spring.springbucks.harness;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.cloud.stream.binder.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConditionalOnMissingBean(Binder.class)
+public class InMemoryBinderConfiguration {
+    @Bean
+    public InMemoryBinder inMemoryBinder() {
+        return new InMemoryBinder(InMemoryBroker.get());
+    }
+}
@@ -0,0 +1,88 @@
+package geektime.spring.springbucks.harness;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.util.StringUtils;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 同一个 JVM 内多个 ApplicationContext 共享的消息中转
+ * 与 RabbitMQ 的语义保持一致：同一 group 内的订阅者轮流消费，不同 group 以及匿名订阅者各收到一份
+ * 每个订阅者有自己的消费线程，消息不持久化，也不做重投
+ */
+@Slf4j
+public class InMemoryBroker {
+    private static final InMemoryBroker INSTANCE = new InMemoryBroker();
+
+    private final ConcurrentMap<String, Destination> destinations = new ConcurrentHashMap<>();
+
+    public static InMemoryBroker get() {
+        return INSTANCE;
+    }
+
+    public void publish(String destination, Message<?> message) {
+        destination(destination).publish(message);
+    }
+
+    public Runnable subscribe(String destination, String group, int concurrency, MessageHandler handler) {
+        Subscriber subscriber = new Subscriber(destination, handler, concurrency);
+        Destination d = destination(destination);
+        List<Subscriber> members = StringUtils.hasText(group) ?
+                d.groups.computeIfAbsent(group, g -> new CopyOnWriteArrayList<>()) : d.anonymous;
+        members.add(subscriber);
+        return () -> {
+            members.remove(subscriber);
+            subscriber.executor.shutdown();
+        };
+    }
+
+    private Destination destination(String name) {
+        return destinations.computeIfAbsent(name, n -> new Destination());
+    }
+
+    private static class Destination {
+        private final ConcurrentMap<String, List<Subscriber>> groups = new ConcurrentHashMap<>();
+        private final List<Subscriber> anonymous = new CopyOnWriteArrayList<>();
+        private final AtomicInteger next = new AtomicInteger();
+
+        void publish(Message<?> message) {
+            groups.values().forEach(members -> {
+                if (!members.isEmpty()) {
+                    int index = Math.floorMod(next.getAndIncrement(), members.size());
+                    members.get(index).deliver(message);
+                }
+            });
+            anonymous.forEach(s -> s.deliver(message));
+        }
+    }
+
+    private static class Subscriber {
+        private final String destination;
+        private final MessageHandler handler;
+        private final ExecutorService executor;
+
+        Subscriber(String destination, MessageHandler handler, int concurrency) {
+            this.destination = destination;
+            this.handler = handler;
+            this.executor = Executors.newFixedThreadPool(Math.max(concurrency, 1));
+        }
+
+        void deliver(Message<?> message) {
+            executor.execute(() -> {
+                try {
+                    handler.handleMessage(message);
+                } catch (Exception e) {
+                    log.error("Failed to handle message from {}.", destination, e);
+                }
+            });
+        }
+    }
+}
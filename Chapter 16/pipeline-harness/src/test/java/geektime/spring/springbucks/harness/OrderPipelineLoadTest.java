@@ -0,0 +1,150 @@
+package geektime.spring.springbucks.harness;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import geektime.spring.springbucks.barista.BaristaServiceApplication;
+import geektime.spring.springbucks.customer.CustomerServiceApplication;
+import geektime.spring.springbucks.waiter.WaiterServiceApplication;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 在一个 JVM 中启动 waiter、barista、customer 三个服务，
+ * 用 H2 和 InMemoryBroker 替代 MySQL、RabbitMQ，关闭 Consul 与 Zipkin，不依赖任何外部服务
+ * 并发调用 POST /customer/order，从下单到 notifyOrders 通知到达计算端到端耗时
+ * 可通过 -Dharness.customers、-Dharness.orders-per-customer、-Dharness.brew-time 调整压力
+ */
+@Slf4j
+public class OrderPipelineLoadTest {
+    private static final int CUSTOMERS = Integer.getInteger("harness.customers", 8);
+    private static final int ORDERS_PER_CUSTOMER = Integer.getInteger("harness.orders-per-customer", 25);
+
+    private static ConfigurableApplicationContext waiter;
+    private static ConfigurableApplicationContext barista;
+    private static ConfigurableApplicationContext customer;
+    private static int customerPort;
+
+    @BeforeClass
+    public static void startServices() {
+        waiter = start(WaiterServiceApplication.class, "waiter");
+        int waiterPort = port(waiter);
+        barista = start(BaristaServiceApplication.class, "barista");
+        customer = start(CustomerServiceApplication.class, "customer",
+                "--waiter-service.ribbon.listOfServers=localhost:" + waiterPort);
+        customerPort = port(customer);
+    }
+
+    @AfterClass
+    public static void stopServices() {
+        Arrays.asList(customer, barista, waiter).forEach(c -> {
+            if (c != null) {
+                c.close();
+            }
+        });
+    }
+
+    @Test
+    public void driveOrders() throws Exception {
+        int total = CUSTOMERS * ORDERS_PER_CUSTOMER;
+        ObjectMapper objectMapper = new ObjectMapper();
+        ConcurrentMap<Long, Long> started = new ConcurrentHashMap<>();
+        ConcurrentMap<Long, Long> notified = new ConcurrentHashMap<>();
+        CountDownLatch done = new CountDownLatch(total);
+        Runnable unsubscribe = InMemoryBroker.get().subscribe("notifyOrders", null, 1, message -> {
+            try {
+                JsonNode event = objectMapper.readTree((byte[]) message.getPayload());
+                if (notified.putIfAbsent(event.get("id").asLong(), System.nanoTime()) == null) {
+                    done.countDown();
+                }
+            } catch (Exception e) {
+                log.warn("Can not read notification: {}", e.getMessage());
+            }
+        });
+
+        RestTemplate restTemplate = new RestTemplate();
+        String url = "http://localhost:" + customerPort + "/customer/order";
+        AtomicInteger failed = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(CUSTOMERS);
+        long begin = System.nanoTime();
+        for (int i = 0; i < CUSTOMERS; i++) {
+            executor.execute(() -> {
+                for (int j = 0; j < ORDERS_PER_CUSTOMER; j++) {
+                    long start = System.nanoTime();
+                    try {
+                        Map<?, ?> order = restTemplate.postForObject(url, null, Map.class);
+                        started.put(((Number) order.get("id")).longValue(), start);
+                    } catch (Exception e) {
+                        failed.incrementAndGet();
+                        done.countDown();
+                        log.warn("Failed to create order: {}", e.getMessage());
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        done.await(2, TimeUnit.MINUTES);
+        long elapsed = System.nanoTime() - begin;
+        unsubscribe.run();
+
+        List<Long> latencies = new ArrayList<>();
+        started.forEach((id, start) -> {
+            Long end = notified.get(id);
+            if (end != null) {
+                latencies.add(end - start);
+            }
+        });
+        latencies.sort(Long::compare);
+        log.info("customers={} orders={} completed={} failed={}",
+                CUSTOMERS, total, latencies.size(), failed.get());
+        log.info("throughput={} orders/s", String.format("%.1f", latencies.size() / (elapsed / 1e9)));
+        log.info("latency p50={}ms p95={}ms p99={}ms max={}ms",
+                percentile(latencies, 0.5), percentile(latencies, 0.95),
+                percentile(latencies, 0.99), percentile(latencies, 1.0));
+
+        assertEquals(0, failed.get());
+        assertEquals(total, latencies.size());
+    }
+
+    private static ConfigurableApplicationContext start(Class<?> application, String name, String... extra) {
+        List<String> args = new ArrayList<>(Arrays.asList(
+                "--spring.config.location=classpath:/harness/common.properties,classpath:/harness/"
+                        + name + ".properties",
+                // 各服务 jar 里的 bootstrap.properties 会互相覆盖，这里不加载，同时关闭 Consul
+                "--spring.cloud.bootstrap.name=harness-none",
+                "--spring.cloud.consul.enabled=false",
+                "--spring.cloud.consul.config.enabled=false"));
+        args.addAll(Arrays.asList(extra));
+        return new SpringApplicationBuilder(application).run(args.toArray(new String[0]));
+    }
+
+    private static int port(ConfigurableApplicationContext context) {
+        return context.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+    }
+
+    private static long percentile(List<Long> sorted, double p) {
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+        int index = (int) Math.ceil(p * sorted.size()) - 1;
+        return TimeUnit.NANOSECONDS.toMillis(sorted.get(Math.max(index, 0)));
+    }
+}